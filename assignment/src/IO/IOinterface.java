@@ -15,10 +15,10 @@ import java.util.Scanner;
 public class IOinterface {
 
     /** Singleton instance of IOinterface. */
-    private static IOinterface instance;
+    private static volatile IOinterface instance;
     
     /** Scanner for reading console input. */
-    private Scanner scanner;
+    private final Scanner scanner;
 
     /**
      * Private constructor that initializes the Scanner for System.in.
@@ -34,8 +34,14 @@ public class IOinterface {
      * @return the singleton instance of IOinterface.
      */
     public static IOinterface getInstance() {
-        if (instance == null) { instance = new IOinterface(); }
-        return instance;    
+        if (instance == null) {
+            synchronized (IOinterface.class) {
+                if (instance == null) {
+                    instance = new IOinterface();
+                }
+            }
+        }
+        return instance;
     }    
        
     /**
@@ -88,7 +94,9 @@ public class IOinterface {
         System.out.println("5. Generate test data\n");
         System.out.println("6. Generate all statistical figures\n");
         System.out.println("7. Delete all data\n");
-        System.out.println("8. Logout\n");
+        System.out.println("8. Compact data files\n");
+        System.out.println("9. Generate bulk test orders\n");
+        System.out.println("10. Logout\n");
         System.out.println("=====================\n");
     }
 
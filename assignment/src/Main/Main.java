@@ -4,10 +4,12 @@ import java.io.File;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
 import java.util.Scanner;
 
 import IO.IOinterface;
 import Model.Customer;
+import Model.Product;
 import Model.User;
 import Operation.AdminOperation;
 import Operation.CustomerOperation;
@@ -123,6 +125,8 @@ public class Main {
                     break;
                 case "3": // Quit
                     io.printMessage("Goodbye!");
+                    // Write out index state that was kept in memory only.
+                    ProductOperation.getInstance().saveTokenIndex();
                     exit = true;
                     break;
                 default:
@@ -145,6 +149,8 @@ public class Main {
      *   <li>Generate test order data.</li>
      *   <li>Generate various statistical figures.</li>
      *   <li>Delete all system data.</li>
+     *   <li>Compact the data files.</li>
+     *   <li>Generate bulk test order data.</li>
      *   <li>Logout and return to the main menu.</li>
      * </ul>
      * </p>
@@ -200,7 +206,29 @@ public class Main {
                     deleteAllData();
                     break;
                 case "8":
-                    // Case 8: Logout.
+                    // Case 8: Compact the data files.
+                    AdminOperation.getInstance().compactDataFiles();
+                    break;
+                case "9":
+                    // Case 9: Generate bulk test order data, replacing the existing orders.
+                    System.out.print("Enter number of orders: ");
+                    String countInput = scanner.nextLine().trim();
+                    System.out.print("Enter seed (blank for random): ");
+                    String seedInput = scanner.nextLine().trim();
+                    try {
+                        long orderCount = Long.parseLong(countInput);
+                        long seed = seedInput.isEmpty() ? System.nanoTime() : Long.parseLong(seedInput);
+                        if (orderCount <= 0) {
+                            io.printErrorMessage("Bulk Orders", "Number of orders must be positive.");
+                        } else if (!OrderOperation.getInstance().generateBulkOrderData(orderCount, seed)) {
+                            io.printErrorMessage("Bulk Orders", "Failed to generate orders.");
+                        }
+                    } catch (NumberFormatException e) {
+                        io.printErrorMessage("Bulk Orders", "Invalid number.");
+                    }
+                    break;
+                case "10":
+                    // Case 10: Logout.
                     io.printMessage("Logging out, returning to main menu.");
                     logout = true;
                     break;
@@ -283,8 +311,8 @@ public class Main {
             String option = scanner.nextLine().trim();
             switch (option) {
                 case "1":
-                    // Case 1: Display customer profile.
-                    io.printObject(customerUser);
+                    // Case 1: Display customer profile, served from the customer's session.
+                    io.printObject(CustomerOperation.getInstance().getSessionCustomer(customerUser.getUserId()));
                     break;
                 case "2":
                     // Case 2: Update profile attributes.
@@ -292,7 +320,8 @@ public class Main {
                     String attr = scanner.nextLine().trim();
                     System.out.print("Enter new value: ");
                     String newVal = scanner.nextLine().trim();
-                    boolean update = CustomerOperation.getInstance().updateProfile(attr, newVal, (Model.Customer) customerUser);
+                    Customer sessionCustomer = CustomerOperation.getInstance().getSessionCustomer(customerUser.getUserId());
+                    boolean update = CustomerOperation.getInstance().updateProfile(attr, newVal, sessionCustomer);
                     if (update) {
                         io.printMessage("Profile updated successfully.");
                     } else {
@@ -315,6 +344,7 @@ public class Main {
                     break;
                 case "6":
                     // Case 6: Logout.
+                    CustomerOperation.getInstance().closeSession(customerUser.getUserId());
                     io.printMessage("Logging out, returning to main menu.");
                     logout = true;
                     break;
@@ -327,18 +357,27 @@ public class Main {
 
     /**
     * Provides an interactive pagination session for product lists.
+    * Besides paging, 's' searches the products: the typed text is completed to the most liked
+    * product names and models, and the chosen completion (or the text itself) is searched for.
+    * 'o' changes the order the pages are listed in and returns to the first page.
     *
     * @param userRole  The role of the user (used to choose the display format)
     */
     private static void paginateProductList(String userRole) {
         int currentPage = 1;
+        String sortKey = null;
         while (true) {
             // Retrieve products for the current page
-            ProductListResult pr = ProductOperation.getInstance().getProductList(currentPage);
+            ProductListResult pr = ProductOperation.getInstance().getProductList(currentPage, sortKey);
             io.showList(userRole, "Product", pr.products, pr.currentPage, pr.totalPages);
-            System.out.println("\nEnter 'n' for next page, 'p' for previous page, or 'b' to go back:");
+            System.out.println("\nEnter 'n' for next page, 'p' for previous page, 's' to search, 'o' to sort, or 'b' to go back:");
             String input = scanner.nextLine().trim().toLowerCase();
-            if (input.equals("n")) {
+            if (input.equals("s")) {
+                searchProducts(userRole);
+            } else if (input.equals("o")) {
+                sortKey = chooseProductSort();
+                currentPage = 1;
+            } else if (input.equals("n")) {
                 if (currentPage < pr.totalPages) {
                     currentPage++;
                 } else {
@@ -353,9 +392,70 @@ public class Main {
             } else if (input.equals("b")) {
                 break;
             } else {
-                System.out.println("Invalid input. Please enter 'n', 'p', or 'b'.");
+                System.out.println("Invalid input. Please enter 'n', 'p', 's', 'o', or 'b'.");
+            }
+        }
+    }
+
+    /**
+     * Asks the user how to sort the product list.
+     *
+     * @return the sort key for {@code getProductList}, or null for file order
+     */
+    private static String chooseProductSort() {
+        System.out.println("Sort by: 1. Default order  2. Cheapest first  3. Highest discount  4. Most liked  5. Name");
+        System.out.print("Enter your choice: ");
+        switch (scanner.nextLine().trim()) {
+            case "2":
+                return "pro_current_price";
+            case "3":
+                return "pro_discount";
+            case "4":
+                return "pro_likes_count";
+            case "5":
+                return "pro_name";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Searches products by name from the product list.
+     * The typed text is first completed to the five most liked matching names and models;
+     * the user picks one by number or keeps the typed text, and the matching products are shown.
+     *
+     * @param userRole The role of the user (used to choose the display format)
+     */
+    private static void searchProducts(String userRole) {
+        System.out.print("Enter search text: ");
+        String text = scanner.nextLine().trim();
+        List<String> completions = ProductOperation.getInstance().autocomplete(text, 5);
+        if (!completions.isEmpty()) {
+            System.out.println("Suggestions:");
+            for (int i = 0; i < completions.size(); i++) {
+                System.out.println((i + 1) + ". " + completions.get(i));
+            }
+            System.out.print("Enter a suggestion number, or press Enter to search for \"" + text + "\": ");
+            String choice = scanner.nextLine().trim();
+            try {
+                int number = Integer.parseInt(choice);
+                if (number >= 1 && number <= completions.size()) {
+                    text = completions.get(number - 1);
+                }
+            } catch (NumberFormatException e) {
+                // Keep the typed text.
+            }
+        }
+        List<Product> matches = ProductOperation.getInstance().getProductListByKeyword(text);
+        if (matches.isEmpty()) {
+            // A chosen model is not part of any name, so fall back to matching whole words,
+            // and then to words with up to two typos.
+            matches = ProductOperation.getInstance().searchProducts(text);
+            if (matches.isEmpty()) {
+                matches = ProductOperation.getInstance().searchProductsFuzzy(text, 2);
             }
         }
+        io.showList(userRole, "Product", matches, 1, 1);
     }
 
     /**
@@ -1,12 +1,9 @@
 package Operation;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -14,27 +11,26 @@ import java.time.format.DateTimeFormatter;
 /**
  * The {@code AdminOperation} class encapsulates operations related to the administrator
  * account. It provides functionality to register the default admin account if one does not
- * already exist in the system. The class is implemented as a singleton to ensure that only one
+ * already exist in the system, and to compact the data files. The class is implemented as a singleton to ensure that only one
  * instance is used throughout the application.
  */
 public class AdminOperation {
 
     /** Singleton instance of the AdminOperation class. */
-    private static AdminOperation instance;
-
-    /** JSON parser used for processing user data from the users file. */
-    private JSONParser parser;
+    private static volatile AdminOperation instance;
 
     // Default admin credentials.
     private final String defaultAdminUserName = "admin";
     private final String defaultAdminPassword = "admin123";
 
+    /** Pages over the records with a role of "admin", kept up to date as the users file changes. */
+    private final PageTable adminPages;
+
     /**
-     * Private constructor to enforce the singleton pattern.
-     * Initializes the JSON parser.
+     * Private constructor to enforce the singleton pattern. Initializes the admin page table.
      */
     private AdminOperation() {
-        parser = new JSONParser();
+        adminPages = RecordFile.USERS.addPageTable(10, this::isAdminRecord);
     }
 
     /**
@@ -45,7 +41,11 @@ public class AdminOperation {
      */
     public static AdminOperation getInstance() {
         if (instance == null) {
-            instance = new AdminOperation();
+            synchronized (AdminOperation.class) {
+                if (instance == null) {
+                    instance = new AdminOperation();
+                }
+            }
         }
         return instance;
     }
@@ -53,72 +53,98 @@ public class AdminOperation {
     /**
      * Registers the default admin account if no admin account exists in the users file.
      * <p>
-     * The method checks "assignment/data/users.txt" for any user record with a role of "admin".
-     * If none is found, it registers a new admin using the default credentials. The new admin's
+     * The method checks "assignment/data/users.txt" for any record with a role of "admin", whatever
+     * its username, through a page table of the admin records that follows registrations, deletes
+     * and rewrites. If none is found, it registers a new admin using the default credentials. The new admin's
      * password is encrypted before saving, and the registration timestamp is recorded using the
      * "dd-MM-yyyy_HH:mm:ss" format.
      * </p>
      */
     public void registerAdmin() {
-        File file = new File("assignment/data/users.txt");
-        boolean adminExists = false;
-        
-        // Check if the admin account already exists in the users file.
-        if (file.exists()) {
-            try (Scanner scanner = new Scanner(file)) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine().trim();
-                    if (line.isEmpty()) {
-                        continue;
-                    }
-                    try {
-                        // Parse each JSON record and check the user role.
-                        JSONObject json = (JSONObject) parser.parse(line);
-                        String role = (String) json.get("user_role");
-                        if ("admin".equalsIgnoreCase(role)) {
-                            adminExists = true;
-                            break;
-                        }
-                    } catch (ParseException pe) {
-                        System.err.println("Error parsing JSON while checking admin existence: " + pe.getMessage());
-                    }
-                }
+        // Hold the users file's write lock so the check and the append cannot be split by another registration.
+        Lock lock = RecordFile.USERS.writeLock();
+        lock.lock();
+        try {
+            // Check if any admin account exists in the users file, under any username.
+            boolean adminExists = false;
+            try {
+                adminExists = adminPages.getPageCount() > 0;
             } catch (IOException e) {
                 System.err.println("Error reading user file: " + e.getMessage());
             }
-        }
         
-        // If admin does not exist, create a new admin account.
-        if (!adminExists) {
-            // Get an instance of UserOperation for utility functions.
-            UserOperation userOp = UserOperation.getInstance();
-            // Generate a unique user ID for the admin.
-            String userId = userOp.generateUniqueUserId();
-            // Get the current time as the registration time.
-            String registerTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss"));
-            // Encrypt the default admin password.
-            String encryptedPwd = userOp.encryptPassword(defaultAdminPassword);
+            // If admin does not exist, create a new admin account.
+            if (!adminExists) {
+                // Get an instance of UserOperation for utility functions.
+                UserOperation userOp = UserOperation.getInstance();
+                // Generate a unique user ID for the admin.
+                String userId = userOp.generateUniqueUserId();
+                if (userId == null) {
+                    System.err.println("Error registering admin: no user ID available.");
+                    return;
+                }
+                // Get the current time as the registration time.
+                String registerTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss"));
+                // Encrypt the default admin password.
+                String encryptedPwd = userOp.encryptPassword(defaultAdminPassword);
 
-            // Create a map to hold admin details.
-            HashMap<String, Object> adminDetails = new HashMap<String, Object>();
-            adminDetails.put("user_id", userId);
-            adminDetails.put("user_name", defaultAdminUserName);
-            adminDetails.put("user_password", encryptedPwd);
-            adminDetails.put("user_register_time", registerTime);
-            adminDetails.put("user_role", "admin");
+                // Create a map to hold admin details.
+                HashMap<String, Object> adminDetails = new HashMap<String, Object>();
+                adminDetails.put("user_id", userId);
+                adminDetails.put("user_name", defaultAdminUserName);
+                adminDetails.put("user_password", encryptedPwd);
+                adminDetails.put("user_register_time", registerTime);
+                adminDetails.put("user_role", "admin");
 
-            // Convert the admin details map to a JSON object.
-            JSONObject adminDetailsJSON = new JSONObject(adminDetails);
+                // Convert the admin details map to a JSON object.
+                JSONObject adminDetailsJSON = new JSONObject(adminDetails);
 
-            // Append the new admin record to the users file.
-            try (FileWriter writer = new FileWriter("assignment/data/users.txt", true)) {
-                writer.write(adminDetailsJSON.toJSONString() + System.lineSeparator());
-                System.out.println("Default admin registered successfully. Username: " + defaultAdminUserName);
+                // Append the new admin record to the users file.
+                try {
+                    RecordFile.USERS.append(adminDetailsJSON.toJSONString());
+                    System.out.println("Default admin registered successfully. Username: " + defaultAdminUserName);
+                } catch (IOException e) {
+                    System.err.println("Error writing admin info to user file: " + e.getMessage());
+                }
+            } else {
+                System.out.println("Admin account already exists.");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a user record has a role of "admin".
+     *
+     * @param line the JSON record.
+     * @return true if the record belongs to an admin; false otherwise.
+     */
+    private boolean isAdminRecord(String line) {
+        try {
+            return "admin".equalsIgnoreCase(RecordCodec.extractField(line, "user_role"));
+        } catch (ParseException e) {
+            System.err.println("Error parsing line: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Compacts the products, orders and users files.
+     * <p>
+     * Deleted records stay in the data files behind a tombstone until the file is compacted.
+     * Compaction normally runs in the background once enough of a file is garbage; this method
+     * runs it immediately for every file and reports the space reclaimed.
+     * </p>
+     */
+    public void compactDataFiles() {
+        for (RecordFile recordFile : new RecordFile[] {RecordFile.PRODUCTS, RecordFile.ORDERS, RecordFile.USERS}) {
+            try {
+                long reclaimed = recordFile.compact();
+                System.out.println("Compacted " + recordFile.getFile().getPath() + ": " + reclaimed + " bytes reclaimed.");
             } catch (IOException e) {
-                System.err.println("Error writing admin info to user file: " + e.getMessage());
+                System.err.println("Error compacting " + recordFile.getFile().getPath() + ": " + e.getMessage());
             }
-        } else {
-            System.out.println("Admin account already exists.");
         }
     }
 }
\ No newline at end of file
@@ -1,14 +1,13 @@
 package Operation;
 import Model.Customer;
 
-import org.json.simple.JSONValue;
-import java.util.LinkedHashMap;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -25,17 +24,21 @@ import java.time.format.DateTimeFormatter;
 public class CustomerOperation {
     
     /** Singleton instance of CustomerOperation. */
-    private static CustomerOperation instance;
-    
-    /** JSON parser for handling JSON data from the users file. */
-    private JSONParser parser;
+    private static volatile CustomerOperation instance;
+
+    /** Sparse table of page start offsets over the customer records in the users file. */
+    private final PageTable customerPages;
+
+    /** The logged-in customers, with the records they were decoded from. */
+    private final SessionStore sessions;
     
     /**
      * Private constructor to enforce singleton pattern.
-     * Initializes the JSON parser.
+     * Initializes the customer page table and the session store.
      */
     private CustomerOperation() {
-        parser = new JSONParser();
+        customerPages = RecordFile.USERS.addPageTable(10, this::isCustomerRecord);
+        sessions = RecordFile.USERS.addSessionStore();
     }
     
     /**
@@ -46,7 +49,11 @@ public class CustomerOperation {
      */
     public static CustomerOperation getInstance() {
         if (instance == null) {
-            instance = new CustomerOperation();
+            synchronized (CustomerOperation.class) {
+                if (instance == null) {
+                    instance = new CustomerOperation();
+                }
+            }
         }
         return instance;
     }
@@ -89,83 +96,50 @@ public class CustomerOperation {
      * @return {@code true} if registration is successful; {@code false} otherwise.
      */
     public boolean registerCustomer(String userName, String userPassword, String userEmail, String userMobile) {
-        if (checkUsernameExist(userName))
-            return false;
         if (!validateEmail(userEmail) || !validateMobile(userMobile))
             return false;
-    
-        String userId = generateUniqueUserId();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss");
-        String registerTime = LocalDateTime.now().format(formatter);
-    
-        // Use a LinkedHashMap to store key/value pairs in a fixed order.
-        LinkedHashMap<String, Object> customerObj = new LinkedHashMap<>();
-        customerObj.put("user_id", userId);
-        customerObj.put("user_name", userName);
-        customerObj.put("user_password", UserOperation.getInstance().encryptPassword(userPassword));
-        customerObj.put("user_register_time", registerTime);
-        customerObj.put("user_role", "customer");
-        customerObj.put("user_email", userEmail);
-        customerObj.put("user_mobile", userMobile);
-    
-        // Define the key order you want.
-        List<String> keyOrder = List.of(
-            "user_id",
-            "user_name",
-            "user_password",
-            "user_register_time",
-            "user_role",
-            "user_email",
-            "user_mobile"
-        );
-    
-        // Build your JSON string with the helper.
-        String customerJSONStr = toOrderedJSONString(customerObj, keyOrder);
-    
-        // Write the JSON string to the file.
-        writeUserToFile(customerJSONStr);
-        return true;
-    }
 
+        // Hold the users file's write lock so two registrations cannot both claim the username.
+        Lock lock = RecordFile.USERS.writeLock();
+        lock.lock();
+        try {
+            if (checkUsernameExist(userName))
+                return false;
 
-    /**
-    * Converts the given LinkedHashMap to a JSON string with keys output in the specified order.
-    *
-    * @param orderedMap the map containing JSON keys and values.
-    * @param keyOrder   the list of keys in the order you want them printed.
-    * @return a JSON formatted string with the keys in the specified order.
-    */
-    private String toOrderedJSONString(LinkedHashMap<String, Object> orderedMap, List<String> keyOrder) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        boolean first = true;
-        for (String key : keyOrder) {
-            if (orderedMap.containsKey(key)) {
-                if (!first) {
-                    sb.append(",");
-                }
-            sb.append("\"").append(key).append("\":");
-            sb.append(JSONValue.toJSONString(orderedMap.get(key)));
-            first = false;
+            String userId = UserOperation.getInstance().generateUniqueUserId();
+            if (userId == null)
+                return false;
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss");
+            String registerTime = LocalDateTime.now().format(formatter);
+
+            Customer customer = new Customer(userId, userName,
+                    UserOperation.getInstance().encryptPassword(userPassword),
+                    registerTime, "customer", userEmail, userMobile);
+
+            // Encode the record; the codec writes the keys in their fixed order.
+            String customerJSONStr = RecordCodec.encodeCustomer(customer);
+
+            // Write the JSON string to the file.
+            writeUserToFile(customerJSONStr);
+            return true;
+        } finally {
+            lock.unlock();
         }
     }
-        sb.append("}");
-        return sb.toString();
-    }
 
 
     /**
      * Writes a JSON object representing a user to the users file ("assignment/data/users.txt").
      * <p>
-     * This method opens the file in append mode and writes the JSON-formatted string followed by a new line.
+     * This method appends the JSON-formatted string followed by a new line.
      * </p>
      *
-     * @param userObj the JSON object containing the user's details.
+     * @param jsonStr the JSON string containing the user's details.
      */
     private void writeUserToFile(String jsonStr) {
-        File file = new File("assignment/data/users.txt");
-        try (FileWriter writer = new FileWriter(file, true)) {
-            writer.write(jsonStr + System.lineSeparator());
+        try {
+            // Appending through the record file keeps the user index up to date.
+            RecordFile.USERS.append(jsonStr);
         } catch (IOException e) {
             System.err.println("Error writing user to file: " + e.getMessage());
         }
@@ -175,46 +149,15 @@ public class CustomerOperation {
     /**
      * Checks if a username already exists in the users file.
      * <p>
-     * The file "assignment/data/users.txt" is scanned line by line and parsed as JSON.
-     * If any record has a matching "user_name" field, the method returns {@code true}.
+     * The username is looked up in the "user_name" index of "assignment/data/users.txt", which
+     * covers only the live records, so the file is not scanned.
      * </p>
      *
      * @param userName the username to search for.
      * @return {@code true} if the username exists; {@code false} otherwise.
      */
     public boolean checkUsernameExist(String userName) {
-        File file = new File("assignment/data/users.txt");
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty())
-                    continue;
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (userName.equals(json.get("user_name"))) {
-                        return true;
-                    }
-                } catch (ParseException e) {
-                    // Ignore parse errors and continue through the file.
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
-        return false;
-    }
-    
-    /**
-     * Generates a unique user ID for a new customer.
-     * <p>
-     * The implementation uses the current system time in milliseconds to guarantee uniqueness.
-     * </p>
-     *
-     * @return a unique user ID string starting with "u_".
-     */
-    private String generateUniqueUserId() {
-        // Example: "u_" + current timestamp in milliseconds.
-        return "u_" + System.currentTimeMillis();
+        return UserOperation.getInstance().checkUsernameExist(userName);
     }
     
     /**
@@ -224,6 +167,14 @@ public class CustomerOperation {
      * this method uses regex to update only the target field in the original line.
      * Supported attributes: "user_name", "user_password", "user_email", and "user_mobile".
      * </p>
+     * <p>
+     * The customer's record comes from the customer's session, or from the primary index when
+     * there is none. The users file is not rewritten: the new version is written over the old one
+     * when it fits and keeps the username, and is appended in its place otherwise. The caller's
+     * {@code Customer} is updated to match the new record once it is written. The customer's
+     * session is never changed here: writing the record drops it, and it is opened again from the
+     * new record on next use, so a write that fails leaves the session as it was.
+     * </p>
      *
      * @param attributeName  the attribute to update.
      * @param value          the new value.
@@ -236,136 +187,271 @@ public class CustomerOperation {
             return false;
         }
 
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/users.txt");
-        boolean found = false;
+        // Hold the users file's write lock so no other change lands between the read and the write-back.
+        Lock lock = RecordFile.USERS.writeLock();
+        lock.lock();
+        try {
+            String record = readProfile(customerObject.getUserId());
+            if (record == null) {
+                System.out.println("Customer not found.");
+                return false;
+            }
+            String updatedLine = patchRecord(attributeName, value, record);
+            if (updatedLine == null) {
+                return false;
+            }
+            if (!RecordFile.USERS.update(customerObject.getUserId(), updatedLine)) {
+                System.out.println("Customer not found.");
+                return false;
+            }
+            refreshCustomer(customerObject, updatedLine);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing file: " + e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A single change to a customer's profile, for {@link #updateProfiles(List)}.
+     */
+    public static class ProfileUpdate {
+        /** The user ID of the customer to update. */
+        public String customerId;
+        /** The attribute to update: "user_name", "user_password", "user_email" or "user_mobile". */
+        public String attributeName;
+        /** The new value. */
+        public String value;
 
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String trimmedLine = line.trim();
-                if (trimmedLine.isEmpty()) {
-                    lines.add(line);
+        /**
+         * Constructs a new {@code ProfileUpdate} instance.
+         *
+         * @param customerId    the user ID of the customer to update.
+         * @param attributeName the attribute to update.
+         * @param value         the new value.
+         */
+        public ProfileUpdate(String customerId, String attributeName, String value) {
+            this.customerId = customerId;
+            this.attributeName = attributeName;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Applies many profile updates at once.
+     * <p>
+     * Each update is validated like one made through
+     * {@link #updateProfile(String, String, Customer)}, and several updates to one customer are
+     * applied in order to the same record. All the new records are then written in a single pass
+     * over the users file under one write lock. Updates with an invalid value or an unknown
+     * customer are skipped.
+     * </p>
+     *
+     * @param updates the updates to apply, in order.
+     * @return the number of updates applied.
+     */
+    public int updateProfiles(List<ProfileUpdate> updates) {
+        Lock lock = RecordFile.USERS.writeLock();
+        lock.lock();
+        try {
+            Map<String, String> records = new LinkedHashMap<>();
+            int applied = 0;
+            for (ProfileUpdate update : updates) {
+                String record = records.get(update.customerId);
+                if (record == null) {
+                    record = readProfile(update.customerId);
+                }
+                if (record == null) {
+                    System.out.println("Customer with id " + update.customerId + " not found.");
                     continue;
                 }
-                try {
-                    // Try to parse the record, so we can check the user_id.
-                    JSONObject json = (JSONObject) parser.parse(trimmedLine);
-                    // If this is the record to update:
-                    if (customerObject.getUserId().equals(json.get("user_id"))) {
-                        found = true;
-                        String updatedLine = line;
-                        // Depending on which attribute we're updating, perform validation and regex replacement.
-                        if ("user_name".equals(attributeName)) {
-                            if (!UserOperation.getInstance().validateUsername(value)) {
-                                System.out.println("Invalid username.");
-                                return false;
-                            }
-                            // Replace the existing user_name value
-                            updatedLine = line.replaceFirst("\"user_name\":\"[^\"]*\"", "\"user_name\":\"" + value + "\"");
-                        } else if ("user_password".equals(attributeName)) {
-                            if (!UserOperation.getInstance().validatePassword(value)) {
-                                System.out.println("Invalid password.");
-                                return false;
-                            }
-                            String encrypted = UserOperation.getInstance().encryptPassword(value);
-                            updatedLine = line.replaceFirst("\"user_password\":\"[^\"]*\"", "\"user_password\":\"" + encrypted + "\"");
-                        } else if ("user_email".equals(attributeName)) {
-                            if (!validateEmail(value)) {
-                                System.out.println("Invalid email.");
-                                return false;
-                            }
-                            updatedLine = line.replaceFirst("\"user_email\":\"[^\"]*\"", "\"user_email\":\"" + value + "\"");
-                        } else if ("user_mobile".equals(attributeName)) {
-                            if (!validateMobile(value)) {
-                                System.out.println("Invalid mobile number.");
-                                return false;
-                            }
-                            updatedLine = line.replaceFirst("\"user_mobile\":\"[^\"]*\"", "\"user_mobile\":\"" + value + "\"");
-                        } else {
-                            System.out.println("Attribute not allowed for update.");
-                            return false;
-                        }
-                        lines.add(updatedLine);
-                    } else {
-                        // For records not matching the target user, keep the line unchanged.
-                        lines.add(line);
-                    }
-                } catch (ParseException e) {
-                    System.err.println("Error parsing JSON: " + e.getMessage());
-                    lines.add(line);
+                String updatedLine = patchRecord(update.attributeName, update.value, record);
+                if (updatedLine != null) {
+                    records.put(update.customerId, updatedLine);
+                    applied++;
                 }
             }
+            RecordFile.USERS.update(records);
+            return applied;
         } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-            return false;
+            System.err.println("Error writing file: " + e.getMessage());
+            return 0;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (!found) {
-            System.out.println("Customer not found.");
-            return false;
+    /**
+     * Reads the current record of a customer, from the customer's session when there is one and
+     * through the primary index otherwise. The spaces that pad a record written over in place are
+     * stripped, so they are not carried into the new version.
+     *
+     * @param customerId the customer's user ID.
+     * @return the record, or null if there is no such customer.
+     * @throws IOException if the users file cannot be read.
+     */
+    private String readProfile(String customerId) throws IOException {
+        SessionStore.Session session = sessions.get(customerId);
+        String record = session != null ? session.record : RecordFile.USERS.readRecord(customerId);
+        return record == null ? null : record.strip();
+    }
+
+    /**
+     * Copies the updatable attributes of a record into a customer object.
+     *
+     * @param customerObject the customer to update.
+     * @param record         the customer's new record.
+     */
+    private void refreshCustomer(Customer customerObject, String record) {
+        try {
+            Customer updated = RecordCodec.decodeCustomer(record);
+            customerObject.setUserName(updated.getUserName());
+            customerObject.setUserPassword(updated.getUserPassword());
+            customerObject.setUserEmail(updated.getUserEmail());
+            customerObject.setUserMobile(updated.getUserMobile());
+        } catch (ParseException e) {
+            System.err.println("Error parsing JSON: " + e.getMessage());
         }
+    }
 
-        // Write all records (with the updated record) back to the file.
-        try (FileWriter writer = new FileWriter(file, false)) {
-            for (String l : lines) {
-                writer.write(l + System.lineSeparator());
+    /**
+     * Changes one attribute of a user record after validating the new value.
+     * <p>
+     * Rather than parsing and re-serializing the JSON (which can change the format),
+     * this method uses regex to update only the target field in the original line. The new value
+     * is quoted so that the "$" in an encrypted password is written as it is.
+     * </p>
+     *
+     * @param attributeName the attribute to update.
+     * @param value         the new value.
+     * @param line          the stored record.
+     * @return the updated record, or null if the attribute or the value is not allowed.
+     */
+    private String patchRecord(String attributeName, String value, String line) {
+        // Depending on which attribute we're updating, perform validation and regex replacement.
+        if ("user_name".equals(attributeName)) {
+            if (!UserOperation.getInstance().validateUsername(value)) {
+                System.out.println("Invalid username.");
+                return null;
             }
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error writing file: " + e.getMessage());
-            return false;
+            // Replace the existing user_name value
+            return line.replaceFirst("\"user_name\":\"[^\"]*\"", Matcher.quoteReplacement("\"user_name\":\"" + value + "\""));
+        } else if ("user_password".equals(attributeName)) {
+            if (!UserOperation.getInstance().validatePassword(value)) {
+                System.out.println("Invalid password.");
+                return null;
+            }
+            String encrypted = UserOperation.getInstance().encryptPassword(value);
+            return line.replaceFirst("\"user_password\":\"[^\"]*\"", Matcher.quoteReplacement("\"user_password\":\"" + encrypted + "\""));
+        } else if ("user_email".equals(attributeName)) {
+            if (!validateEmail(value)) {
+                System.out.println("Invalid email.");
+                return null;
+            }
+            return line.replaceFirst("\"user_email\":\"[^\"]*\"", Matcher.quoteReplacement("\"user_email\":\"" + value + "\""));
+        } else if ("user_mobile".equals(attributeName)) {
+            if (!validateMobile(value)) {
+                System.out.println("Invalid mobile number.");
+                return null;
+            }
+            return line.replaceFirst("\"user_mobile\":\"[^\"]*\"", Matcher.quoteReplacement("\"user_mobile\":\"" + value + "\""));
         }
+        System.out.println("Attribute not allowed for update.");
+        return null;
     }
 
     /**
-     * Deletes a customer record by their user ID.
+     * Opens a session for a customer who has just logged in.
+     *
+     * @param record the customer's stored record.
+     * @param offset the byte offset of the record in the users file.
+     * @return a copy of the fully decoded customer, or null if the record cannot be parsed.
+     */
+    Customer openSession(String record, long offset) {
+        try {
+            Customer customer = RecordCodec.decodeCustomer(record);
+            sessions.put(new SessionStore.Session(customer, record, offset));
+            return copyOf(customer);
+        } catch (ParseException e) {
+            System.err.println("Error parsing JSON: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the customer of an open session.
      * <p>
-     * The method reads all user records from "assignment/data/users.txt", removes
-     * the matching customer record, and writes the remaining records back.
+     * The customer is served from the session store without reading the users file. If the
+     * session was dropped because the record changed, the record is read once through the
+     * primary index and the session is opened again. The caller gets its own copy, so changing it
+     * does not change the session.
      * </p>
      *
-     * @param customerId the unique identifier of the customer to delete.
-     * @return {@code true} if the customer was found and deleted; {@code false} otherwise.
+     * @param customerId the customer's user ID.
+     * @return a copy of the customer, or null if there is no such customer.
      */
-    public boolean deleteCustomer(String customerId) {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/users.txt");
-        boolean found = false;
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (customerId.equals(json.get("user_id"))) {
-                        found = true;
-                        continue; // Skip this record
-                    }
-                } catch (ParseException e) {
-                    // Ignore parse errors and keep the record unchanged.
-                }
-                lines.add(line);
+    public Customer getSessionCustomer(String customerId) {
+        SessionStore.Session session = sessions.get(customerId);
+        if (session != null) {
+            return copyOf(session.customer);
+        }
+        Lock lock = RecordFile.USERS.readLock();
+        lock.lock();
+        try {
+            RecordIndex.Slot slot = RecordFile.USERS.getPrimaryIndex().lookup(customerId);
+            if (slot == null) {
+                return null;
             }
+            return openSession(RecordFile.USERS.readAt(slot.offset, slot.length), slot.offset);
         } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-            return false;
+            System.err.println("Error reading customer file: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (!found) {
-            System.out.println("Customer with id " + customerId + " not found.");
-            return false;
-        }
+    /**
+     * Copies a session's customer for a caller.
+     */
+    private static Customer copyOf(Customer customer) {
+        return new Customer(customer.getUserId(), customer.getUserName(), customer.getUserPassword(),
+                customer.getUserRegisterTime(), customer.getUserRole(), customer.getUserEmail(),
+                customer.getUserMobile());
+    }
 
-        try (FileWriter writer = new FileWriter("assignment/data/users.txt", false)) {
-            for (String line : lines) {
-                writer.write(line + System.lineSeparator());
+    /**
+     * Closes the session of a customer who logs out.
+     *
+     * @param customerId the customer's user ID.
+     */
+    public void closeSession(String customerId) {
+        sessions.remove(customerId);
+    }
+
+    /**
+     * Deletes a customer record by their user ID.
+     * <p>
+     * A tombstone for the user ID is appended to "assignment/data/users.txt" instead of
+     * rewriting the file. The deleted record is dropped when the file is next compacted.
+     * </p>
+     *
+     * @param customerId the unique identifier of the customer to delete.
+     * @return {@code true} if the customer was found and deleted; {@code false} otherwise.
+     */
+    public boolean deleteCustomer(String customerId) {
+        try {
+            if (RecordFile.USERS.delete(customerId)) {
+                return true;
             }
-            return true;
         } catch (IOException e) {
             System.err.println("Error writing file: " + e.getMessage());
             return false;
         }
+        System.out.println("Customer with id " + customerId + " not found.");
+        return false;
     }
 
     /**
@@ -396,8 +482,9 @@ public class CustomerOperation {
     /**
      * Retrieves a paginated list of customers from the users file.
      * <p>
-     * The method filters only customers (users with the role "customer") and
-     * returns a paginated result, displaying up to 10 customers per page.
+     * The method pages only customers (users with the role "customer"), displaying up to
+     * 10 customers per page. The customer page table lets it seek straight to the requested
+     * page and decode only the records shown.
      * </p>
      *
      * @param pageNumber the page number to retrieve.
@@ -405,55 +492,25 @@ public class CustomerOperation {
      */
     public CustomerListResult getCustomerList(int pageNumber) {
         List<Customer> customers = new ArrayList<>();
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/users.txt");
-
-        // Read all records from the users file
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                lines.add(scanner.nextLine().trim());
+        List<String> customerLines = new ArrayList<>();
+        int totalPages = 0;
+
+        try {
+            totalPages = customerPages.getPageCount();
+            if (pageNumber < 1) {
+                pageNumber = 1;
+            } else if (pageNumber > totalPages) {
+                pageNumber = totalPages;
             }
+            customerLines = customerPages.readPage(pageNumber);
         } catch (IOException e) {
             System.err.println("Error reading file for customer list: " + e.getMessage());
         }
 
-        // Filter out records belonging to customers
-        List<String> customerLines = new ArrayList<>();
-        for (String line : lines) {
-            if (line.isEmpty()) continue;
+        for (String line : customerLines) {
             try {
-                JSONObject json = (JSONObject) parser.parse(line);
-                if ("customer".equals(json.get("user_role"))) {
-                    customerLines.add(line);
-                }
-            } catch (ParseException e) {
-                System.err.println("Error parsing line: " + e.getMessage());
-            }
-        }
-
-        int totalCustomers = customerLines.size();
-        int totalPages = (int) Math.ceil(totalCustomers / 10.0);
-        if (pageNumber < 1) {
-            pageNumber = 1;
-        } else if (pageNumber > totalPages) {
-            pageNumber = totalPages;
-        }
-
-        int start = (pageNumber - 1) * 10;
-        int end = Math.min(start + 10, totalCustomers);
-
-        for (int i = start; i < end; i++) {
-            try {
-                JSONObject json = (JSONObject) parser.parse(customerLines.get(i));
-                String userId = (String) json.get("user_id");
-                String userName = (String) json.get("user_name");
-                String userPassword = (String) json.get("user_password"); // still encrypted
-                String registerTime = (String) json.get("user_register_time");
-                String email = (String) json.get("user_email");
-                String mobile = (String) json.get("user_mobile");
-
-                Customer customer = new Customer(userId, userName, userPassword, registerTime, "customer", email, mobile);
-                customers.add(customer);
+                // The password stays encrypted.
+                customers.add(RecordCodec.decodeCustomer(line));
             } catch (ParseException e) {
                 System.err.println("Error parsing customer record: " + e.getMessage());
             }
@@ -462,6 +519,21 @@ public class CustomerOperation {
         return new CustomerListResult(customers, pageNumber, totalPages);
     }
 
+    /**
+     * Checks whether a users file record belongs to a customer.
+     *
+     * @param line a JSON-formatted user record.
+     * @return {@code true} if the record's role is "customer"; {@code false} otherwise.
+     */
+    private boolean isCustomerRecord(String line) {
+        try {
+            return "customer".equals(RecordCodec.extractField(line, "user_role"));
+        } catch (ParseException e) {
+            System.err.println("Error parsing line: " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Deletes all customer records while preserving other user accounts.
      * <p>
@@ -470,43 +542,47 @@ public class CustomerOperation {
      * </p>
      */
     public void deleteAllCustomers() {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/users.txt");
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (!"customer".equals(json.get("user_role"))) {
+        // Hold the users file's write lock so no registration lands between the read and the write-back.
+        Lock lock = RecordFile.USERS.writeLock();
+        lock.lock();
+        try {
+            List<String> lines = new ArrayList<>();
+
+            try {
+                JSONParser parser = new JSONParser();
+                for (String line : RecordFile.USERS.readLines()) {
+                    line = line.trim();
+                    try {
+                        JSONObject json = (JSONObject) parser.parse(line);
+                        if (!"customer".equals(json.get("user_role"))) {
+                            lines.add(line);
+                        }
+                    } catch (ParseException e) {
                         lines.add(line);
                     }
-                } catch (ParseException e) {
-                    lines.add(line);
                 }
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        }
 
-        try (FileWriter writer = new FileWriter("assignment/data/users.txt", false)) {
-            for (String line : lines) {
-                writer.write(line + System.lineSeparator());
+            try {
+                RecordFile.USERS.rewrite(lines);
+            } catch (IOException e) {
+                System.err.println("Error writing file: " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.err.println("Error writing file: " + e.getMessage());
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Finds and returns a Customer object based on the provided customer ID.
      * <p>
-     * This method reads through the customers file ("assignment/data/users.txt"), which is assumed to contain
-     * one JSON record per line. Each record represents a customer with keys such as "user_id", "user_name",
-     * "user_password", "user_register_time", "user_role", "user_email", and "user_mobile". The method parses
-     * each record and compares its "user_id" with the provided <code>customerId</code>. When a match is found,
-     * a corresponding {@code Customer} is constructed and returned.
+     * A logged-in customer is returned from the session store without reading the file. Otherwise
+     * the record is located through the primary-key index of "assignment/data/users.txt" and read
+     * with a single positioned read, so the rest of the file is not scanned. The record is expected
+     * to contain keys such as "user_id", "user_name", "user_password", "user_register_time",
+     * "user_role", "user_email", and "user_mobile".
      * </p>
      * <p>
      * If no matching customer is found or if an I/O or parsing error occurs, the method returns <code>null</code>.
@@ -516,56 +592,30 @@ public class CustomerOperation {
      * @return a {@code Customer} object corresponding to the specified ID, or <code>null</code> if not found.
      */
     public Customer findCustomerById(String customerId) {
-        // Create a JSONParser instance to parse JSON strings.
-        JSONParser parser = new JSONParser();
-        
-        // Define the file containing customer JSON records.
-        File file = new File("assignment/data/users.txt");
-        
-        // Use try-with-resources to ensure the Scanner is closed automatically.
-        try (Scanner scanner = new Scanner(file)) {
-            // Process the file line by line.
-            while (scanner.hasNextLine()) {
-                // Read and trim each line.
-                String line = scanner.nextLine().trim();
-                // Skip empty lines.
-                if (line.isEmpty()) {
-                    continue;
-                }
-                try {
-                    // Parse the line into a JSONObject.
-                    JSONObject jsonObj = (JSONObject) parser.parse(line);
-                    // Retrieve the "user_id" from the JSON object.
-                    String id = (String) jsonObj.get("user_id");
-                    // Check if the current record's user_id matches the provided customerId.
-                    if (customerId.equals(id)) {
-                        // Create and return a new Customer instance.
-                        // Adjust the constructor parameters as needed for your Customer class.
-                        return new Customer(
-                            (String) jsonObj.get("user_id"),          // Customer ID
-                            (String) jsonObj.get("user_name"),          // Customer name
-                            (String) jsonObj.get("user_password"),      // Encrypted password
-                            (String) jsonObj.get("user_register_time"), // Registration time
-                            (String) jsonObj.get("user_role"),          // User role (e.g., "customer")
-                            (String) jsonObj.get("user_email"),         // Email address
-                            (String) jsonObj.get("user_mobile")         // Mobile number
-                        );
-                    }
-                } catch (ParseException e) {
-                    // If a parse error occurs, print an error message and continue to the next line.
-                    System.err.println("Error parsing JSON on line: " + line);
-                    System.err.println("ParseException: " + e.getMessage());
-                }
-            }
+        // A logged-in customer is already decoded; hand out a copy so the session stays as stored.
+        SessionStore.Session session = sessions.get(customerId);
+        if (session != null) {
+            return copyOf(session.customer);
+        }
+        String line;
+        try {
+            line = RecordFile.USERS.readRecord(customerId);
         } catch (IOException e) {
             // Print an error message if there's a problem reading the file.
             System.err.println("Error reading customer file: " + e.getMessage());
+            return null;
+        }
+        if (line == null) {
+            return null;
+        }
+
+        try {
+            // Decode the record straight into a Customer; the password stays encrypted.
+            return RecordCodec.decodeCustomer(line);
+        } catch (ParseException e) {
+            System.err.println("Error parsing JSON on line: " + line);
+            System.err.println("ParseException: " + e.getMessage());
+            return null;
         }
-        
-        // Return null if no matching customer is found.
-        return null;
     }
 }
-
-
-
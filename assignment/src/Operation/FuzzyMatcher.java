@@ -0,0 +1,127 @@
+package Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@code FuzzyMatcher} class finds the words of a vocabulary within a small edit distance of
+ * a query word.
+ * <p>
+ * The vocabulary is kept sorted, which makes it an implicit trie: words sharing a prefix are
+ * neighbours. A search walks the words in order while keeping one row of the Levenshtein table
+ * per prefix character, so consecutive words reuse the rows of their common prefix. As soon as
+ * every entry of a row exceeds the distance limit, no word with that prefix can match, and the
+ * whole block of words sharing it is skipped with a binary search. Only prefixes that stay
+ * within the limit are ever examined, so a search touches a small part of even a large
+ * vocabulary.
+ * </p>
+ */
+final class FuzzyMatcher {
+
+    /** The vocabulary in ascending order. */
+    private final String[] words;
+
+    /**
+     * Builds a matcher over the given words.
+     *
+     * @param vocabulary the distinct words to match against.
+     */
+    FuzzyMatcher(Collection<String> vocabulary) {
+        this.words = vocabulary.toArray(new String[0]);
+        Arrays.sort(words);
+    }
+
+    /**
+     * Returns every word within the given distance of the query.
+     *
+     * @param query       the word to match.
+     * @param maxDistance the largest number of inserted, deleted or replaced characters.
+     * @return the matching words in ascending order.
+     */
+    List<String> search(String query, int maxDistance) {
+        List<String> matches = new ArrayList<>();
+        int columns = query.length() + 1;
+        // rows[k] is the Levenshtein row for the first k characters of the current word.
+        int[][] rows = new int[16][];
+        rows[0] = new int[columns];
+        for (int j = 0; j < columns; j++) {
+            rows[0][j] = j;
+        }
+        String previous = "";
+        int validRows = 0;
+        int i = 0;
+        while (i < words.length) {
+            String word = words[i];
+            int depth = Math.min(commonPrefix(previous, word), validRows);
+            boolean dead = false;
+            while (depth < word.length()) {
+                if (depth + 1 == rows.length) {
+                    rows = Arrays.copyOf(rows, rows.length * 2);
+                }
+                int[] above = rows[depth];
+                int[] row = rows[depth + 1];
+                if (row == null) {
+                    row = new int[columns];
+                    rows[depth + 1] = row;
+                }
+                char c = word.charAt(depth);
+                row[0] = depth + 1;
+                int rowMin = row[0];
+                for (int j = 1; j < columns; j++) {
+                    int cost = query.charAt(j - 1) == c ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+                    rowMin = Math.min(rowMin, row[j]);
+                }
+                depth++;
+                if (rowMin > maxDistance) {
+                    dead = true;
+                    break;
+                }
+            }
+            previous = word;
+            if (dead) {
+                // No word starting with this prefix can come within the limit.
+                validRows = depth;
+                i = firstPast(word.substring(0, depth), i + 1);
+                continue;
+            }
+            validRows = depth;
+            if (rows[depth][columns - 1] <= maxDistance) {
+                matches.add(word);
+            }
+            i++;
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the index of the first word from {@code from} on that does not start with the prefix.
+     */
+    private int firstPast(String prefix, int from) {
+        int low = from;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the length of the common prefix of two words.
+     */
+    private static int commonPrefix(String a, String b) {
+        int limit = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,198 @@
+package Operation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The {@code IdAllocator} class hands out unique, increasing record IDs such as "o_00026".
+ * <p>
+ * IDs come from an atomic counter, so taking one costs a single atomic increment. The counter
+ * reserves IDs in blocks: before an ID beyond the current block is handed out, the end of the
+ * next block is written to a small metadata file next to the data file. After a restart the
+ * counter resumes from that saved ceiling, so an ID is never handed out twice even if the program
+ * stopped halfway through a block; at most the rest of that block is skipped. When there is no
+ * metadata file yet, the counter is seeded once from the highest ID found in the data file.
+ * </p>
+ */
+final class IdAllocator {
+
+    /** Number of IDs reserved with each write of the metadata file. */
+    private static final long BLOCK_SIZE = 1000;
+
+    /** Allocator for order IDs, "o_" followed by at least 5 digits. */
+    static final IdAllocator ORDERS = new IdAllocator(RecordFile.ORDERS, "order_id", "o_", 5,
+            new File(RecordFile.DATA_DIRECTORY, "orders.seq"));
+
+    /** Allocator for user IDs, "u_" followed by at least 10 digits. */
+    static final IdAllocator USERS = new IdAllocator(RecordFile.USERS, "user_id", "u_", 10,
+            new File(RecordFile.DATA_DIRECTORY, "users.seq"));
+
+    /** The data file whose records carry the IDs. */
+    private final RecordFile recordFile;
+
+    /** The JSON field holding the ID. */
+    private final String idField;
+
+    /** Text in front of the number. */
+    private final String prefix;
+
+    /** Minimum number of digits, padded with leading zeros. */
+    private final int digits;
+
+    /** The metadata file holding the reserved ceiling. */
+    private final File seqFile;
+
+    /** The next number to hand out. */
+    private final AtomicLong next = new AtomicLong();
+
+    /** Numbers below this value are reserved in the metadata file and may be handed out. */
+    private volatile long ceiling;
+
+    /** Whether the counter has been loaded from the metadata file or the data file. */
+    private volatile boolean loaded;
+
+    /**
+     * Constructs an allocator; it is loaded on first use.
+     *
+     * @param recordFile the data file whose records carry the IDs.
+     * @param idField    the JSON field holding the ID.
+     * @param prefix     the text in front of the number.
+     * @param digits     the minimum number of digits.
+     * @param seqFile    the metadata file holding the reserved ceiling.
+     */
+    private IdAllocator(RecordFile recordFile, String idField, String prefix, int digits, File seqFile) {
+        this.recordFile = recordFile;
+        this.idField = idField;
+        this.prefix = prefix;
+        this.digits = digits;
+        this.seqFile = seqFile;
+    }
+
+    /**
+     * Hands out the next ID.
+     *
+     * @return a new unique ID.
+     * @throws IOException if the counter cannot be loaded or the next block cannot be reserved.
+     */
+    String nextId() throws IOException {
+        return format(reserve(1));
+    }
+
+    /**
+     * Reserves a run of consecutive numbers, for example for bulk generation.
+     *
+     * @param count the number of IDs to reserve.
+     * @return the first reserved number; the run ends just before {@code first + count}.
+     * @throws IOException if the counter cannot be loaded or the block cannot be reserved.
+     */
+    long reserve(long count) throws IOException {
+        ensureLoaded();
+        long first = next.getAndAdd(count);
+        if (first + count > ceiling) {
+            extendCeiling(first + count);
+        }
+        return first;
+    }
+
+    /**
+     * Formats a number as an ID.
+     *
+     * @param number the number.
+     * @return the prefix followed by the number, zero-padded to the minimum number of digits.
+     */
+    String format(long number) {
+        String text = Long.toString(number);
+        StringBuilder id = new StringBuilder(prefix.length() + Math.max(digits, text.length()));
+        id.append(prefix);
+        for (int i = text.length(); i < digits; i++) {
+            id.append('0');
+        }
+        return id.append(text).toString();
+    }
+
+    /**
+     * Moves the saved ceiling past the given number, in whole blocks.
+     *
+     * @param required the ceiling that must at least be reached.
+     * @throws IOException if the metadata file cannot be written.
+     */
+    private synchronized void extendCeiling(long required) throws IOException {
+        if (required <= ceiling) return;
+        long newCeiling = ceiling;
+        while (newCeiling < required) {
+            newCeiling += BLOCK_SIZE;
+        }
+        // Write the new value beside the old one and move it over, so a crash never leaves an empty or
+        // partly written file that would let IDs be handed out twice.
+        File replacement = new File(seqFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(replacement, false)) {
+            out.write(Long.toString(newCeiling).getBytes(StandardCharsets.US_ASCII));
+            out.getChannel().force(true);
+        } catch (IOException e) {
+            replacement.delete();
+            throw e;
+        }
+        try {
+            Files.move(replacement.toPath(), seqFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(replacement.toPath(), seqFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        ceiling = newCeiling;
+    }
+
+    /**
+     * Loads the counter from the metadata file, or seeds it from the data file if there is none.
+     *
+     * @throws IOException if the data file cannot be read.
+     */
+    private void ensureLoaded() throws IOException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            long start = -1;
+            if (seqFile.exists()) {
+                try {
+                    start = Long.parseLong(new String(Files.readAllBytes(seqFile.toPath()), StandardCharsets.US_ASCII).trim());
+                } catch (IOException | NumberFormatException e) {
+                    System.err.println("Error reading ID metadata " + seqFile + ": " + e.getMessage());
+                }
+            }
+            if (start < 0) {
+                start = highestStoredId() + 1;
+            }
+            next.set(start);
+            ceiling = start;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Finds the highest numeric ID in the data file, including deleted records.
+     *
+     * @return the highest ID number, or 0 if there is none.
+     * @throws IOException if the data file cannot be read.
+     */
+    private long highestStoredId() throws IOException {
+        long[] highest = {0};
+        recordFile.scanStored(0, (offset, buffer, length) -> {
+            try {
+                String id = RecordCodec.extractField(buffer, 0, length, idField);
+                if (id != null && id.startsWith(prefix)) {
+                    highest[0] = Math.max(highest[0], Long.parseLong(id.substring(prefix.length())));
+                }
+            } catch (ParseException | NumberFormatException e) {
+                // Skip records whose ID is not in the allocator's format.
+            }
+            return true;
+        });
+        return highest[0];
+    }
+}
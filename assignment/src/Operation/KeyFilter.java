@@ -0,0 +1,259 @@
+package Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The {@code KeyFilter} class is an in-memory Bloom filter over one field of a {@link RecordFile}.
+ * <p>
+ * It answers whether a value might be held by some record. A "no" is certain and costs a few bit
+ * reads, so the caller can skip the disk entirely; a "maybe" has to be confirmed by an exact
+ * lookup, and is wrong about one time in a hundred at the planned size. The filter is built with
+ * one scan of the file on first use and takes in the values of appended and patched records as
+ * they come.
+ * </p>
+ * <p>
+ * Values are never taken out, so deleted records only make false positives a little more likely.
+ * When the file is rewritten or changes without the filter being told, or holds more values than
+ * the filter was sized for, the filter is rebuilt on next use.
+ * </p>
+ */
+final class KeyFilter implements RecordFile.ChangeListener {
+
+    /** Bits planned per value; with {@link #HASH_COUNT} hashes this gives about 1% false positives. */
+    private static final int BITS_PER_VALUE = 10;
+
+    /** Number of bits set per value. */
+    private static final int HASH_COUNT = 7;
+
+    /** Smallest number of values planned for. */
+    private static final int MIN_CAPACITY = 1024;
+
+    /** The data file being filtered. */
+    private final RecordFile recordFile;
+
+    /** The field whose values are filtered. */
+    private final String keyField;
+
+    /** The filter's bits. */
+    private long[] bits;
+
+    /** Number of values added since the filter was built, counting repeats. */
+    private int count;
+
+    /** Number of values the filter was sized for. */
+    private int capacity;
+
+    /** Whether the filter currently covers the data file. */
+    private boolean loaded;
+
+    /** Size of the data file that the filter describes. */
+    private long dataLength;
+
+    /** Modification time of the data file that the filter describes. */
+    private long dataModified;
+
+    /** Lookups the filter answered with a certain "no". */
+    private long definiteMisses;
+
+    /** Lookups the filter answered with "maybe" that the exact lookup then found absent. */
+    private long falsePositives;
+
+    /**
+     * Constructs an empty filter; it is built on first use.
+     *
+     * @param recordFile the data file being filtered.
+     * @param keyField   the field whose values are filtered.
+     */
+    KeyFilter(RecordFile recordFile, String keyField) {
+        this.recordFile = recordFile;
+        this.keyField = keyField;
+    }
+
+    /**
+     * Checks whether a record might hold a value.
+     *
+     * @param value the value to look for.
+     * @return false if no record holds the value; true if one might.
+     * @throws IOException if the filter has to be built and the data file cannot be read.
+     */
+    boolean mightContain(String value) throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                long hash = hash(value);
+                for (int i = 0; i < HASH_COUNT; i++) {
+                    int bit = bit(hash, i);
+                    if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                        definiteMisses++;
+                        return false;
+                    }
+                }
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a value the filter let through was not found by the exact lookup.
+     */
+    synchronized void recordFalsePositive() {
+        falsePositives++;
+    }
+
+    /**
+     * Returns the share of absent values that the filter failed to rule out.
+     *
+     * @return the observed false-positive rate, between 0 and 1; 0 before any absent value was checked.
+     */
+    synchronized double getFalsePositiveRate() {
+        long negatives = definiteMisses + falsePositives;
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+
+    /**
+     * Adds the value of a record that was just written. The caller holds the monitor.
+     *
+     * @param value the value; null is ignored.
+     */
+    private void add(String value) {
+        if (!loaded || value == null) {
+            // An unbuilt filter will find the value when it scans the file.
+            return;
+        }
+        if (count == capacity) {
+            // Past the planned size false positives climb quickly, so build a larger filter on next use.
+            loaded = false;
+            return;
+        }
+        set(hash(value));
+    }
+
+    @Override
+    public synchronized void recordAppended(long previousSize, long previousModified, long offset, int length, String line) {
+        if (!loaded || previousSize != dataLength || previousModified != dataModified) {
+            loaded = false;
+            return;
+        }
+        if (!RecordCodec.isTombstone(line)) {
+            try {
+                add(RecordCodec.extractField(line, keyField));
+            } catch (ParseException e) {
+                // A record that cannot be parsed holds no value.
+            }
+        }
+        File dataFile = recordFile.getFile();
+        dataLength = dataFile.length();
+        dataModified = dataFile.lastModified();
+    }
+
+    @Override
+    public synchronized void recordPatched(long previousModified, long offset, int length, String previousLine, String line) {
+        File dataFile = recordFile.getFile();
+        if (!loaded || dataLength != dataFile.length() || previousModified != dataModified) {
+            loaded = false;
+            return;
+        }
+        try {
+            add(RecordCodec.extractField(line, keyField));
+        } catch (ParseException e) {
+            // A record that cannot be parsed holds no value.
+        }
+        dataModified = dataFile.lastModified();
+    }
+
+    @Override
+    public void recordDeleted(long offset, int length) {
+        // Values are never taken out of the filter.
+    }
+
+    @Override
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * Builds the filter with one scan if the data file has changed without the filter being told.
+     */
+    private void ensureCurrent() throws IOException {
+        File dataFile = recordFile.getFile();
+        if (loaded && dataLength == dataFile.length() && dataModified == dataFile.lastModified()) {
+            return;
+        }
+        long length = dataFile.length();
+        long modified = dataFile.lastModified();
+        // Hash every value first, so that the filter can be sized for them in the same scan.
+        long[][] hashes = {new long[1024]};
+        int[] found = new int[1];
+        recordFile.scanStored(0, (offset, buffer, recordLength) -> {
+            if (!RecordCodec.isTombstone(buffer, recordLength)) {
+                try {
+                    String value = RecordCodec.extractField(buffer, 0, recordLength, keyField);
+                    if (value != null) {
+                        if (found[0] == hashes[0].length) {
+                            hashes[0] = Arrays.copyOf(hashes[0], found[0] * 2);
+                        }
+                        hashes[0][found[0]++] = hash(value);
+                    }
+                } catch (ParseException e) {
+                    // A record that cannot be parsed holds no value.
+                }
+            }
+            return true;
+        });
+        // Leave room for as many values again before the filter has to be rebuilt.
+        capacity = Math.max(MIN_CAPACITY, found[0] * 2);
+        bits = new long[(int) (((long) capacity * BITS_PER_VALUE + 63) / 64)];
+        count = 0;
+        for (int i = 0; i < found[0]; i++) {
+            set(hashes[0][i]);
+        }
+        dataLength = length;
+        dataModified = modified;
+        loaded = true;
+    }
+
+    /**
+     * Sets the bits of a hashed value.
+     */
+    private void set(long hash) {
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bit(hash, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    /**
+     * Returns the position of one of a value's bits, derived from the two halves of its hash.
+     */
+    private int bit(long hash, int i) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32) | 1;
+        return (int) (((first + i * second) & 0xFFFFFFFFL) % ((long) bits.length * 64));
+    }
+
+    /**
+     * Hashes a value's UTF-8 bytes with 64-bit FNV-1a; the two halves seed the filter's bit positions.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        // Finish with a mix so that the high half depends on every byte as much as the low half.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
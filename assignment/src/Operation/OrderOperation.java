@@ -1,18 +1,25 @@
 package Operation;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Scanner;
-import org.json.simple.JSONValue;
-import java.util.LinkedHashMap;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 import org.json.simple.parser.ParseException;
 
 import Model.Order;
@@ -43,17 +50,20 @@ import javax.imageio.ImageIO;
 public class OrderOperation {
 
     /** Singleton instance of OrderOperation. */
-    private static OrderOperation instance;
+    private static volatile OrderOperation instance;
 
-    /** JSON parser for processing order data in JSON format. */
-    private JSONParser parser;
+    /** Number of orders generated per task by {@link #generateBulkOrderData(long, long)}. */
+    private static final int BULK_CHUNK_SIZE = 1 << 16;
+
+    /** Sparse table of page start offsets in the orders file. */
+    private final PageTable orderPages;
 
     /**
      * Private constructor to enforce singleton pattern.
-     * Initializes the JSON parser.
+     * Initializes the order page table.
      */
     private OrderOperation() {
-        parser = new JSONParser();
+        orderPages = RecordFile.ORDERS.addPageTable(10, null);
     }
 
     /**
@@ -64,7 +74,11 @@ public class OrderOperation {
      */
     public static OrderOperation getInstance() {
         if (instance == null) {
-            instance = new OrderOperation();
+            synchronized (OrderOperation.class) {
+                if (instance == null) {
+                    instance = new OrderOperation();
+                }
+            }
         }
         return instance;
     }
@@ -72,13 +86,19 @@ public class OrderOperation {
     /**
      * Generates a unique order ID.
      * <p>
-     * The order ID is prefixed with "o_" followed by a randomly generated 5-digit number.
+     * The order ID is prefixed with "o_" followed by a sequence number of at least 5 digits,
+     * taken from the persistent {@link IdAllocator}.
      * </p>
      *
-     * @return a unique order ID.
+     * @return a unique order ID, or null if no ID could be allocated.
      */
     public String generateUniqueOrderId() {
-        return "o_" + String.format("%05d", new Random().nextInt(100000));
+        try {
+            return IdAllocator.ORDERS.nextId();
+        } catch (IOException e) {
+            System.err.println("Error allocating order ID: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -91,26 +111,14 @@ public class OrderOperation {
     */
 
     public boolean createAnOrder(String customerId, String productId, String orderTime) {
-        // Generate a random unique order ID. (Adjust this as needed.)
-        String orderId = "o_" + String.format("%05d", new java.util.Random().nextInt(100000));
-    
-        // Build the order record using a LinkedHashMap to preserve key order.
-        LinkedHashMap<String, Object> orderMap = new LinkedHashMap<>();
-        orderMap.put("order_id", orderId);
-        orderMap.put("user_id", customerId);
-        orderMap.put("pro_id", productId);
-        orderMap.put("order_time", orderTime);
-    
-        // Define the desired order for the keys.
-        List<String> keyOrder = List.of("order_id", "user_id", "pro_id", "order_time");
-    
-        // Generate the JSON string using our helper.
-        String orderJSON = toOrderedJSONString(orderMap, keyOrder);
+        // Append the encoded order to the orders.txt file; this also updates the order index.
+        try {
+            // Take the next order ID from the allocator.
+            String orderId = IdAllocator.ORDERS.nextId();
     
-        // Write the JSON string to the orders.txt file.
-        File file = new File("assignment/data/orders.txt");
-        try (FileWriter writer = new FileWriter(file, true)) {
-            writer.write(orderJSON + System.lineSeparator());
+            // Encode the order record; the codec writes the keys in their fixed order.
+            String orderJSON = RecordCodec.encodeOrder(new Order(orderId, customerId, productId, orderTime));
+            RecordFile.ORDERS.append(orderJSON);
             return true;
         } catch (IOException e) {
             System.err.println("Error writing order to file: " + e.getMessage());
@@ -122,51 +130,25 @@ public class OrderOperation {
     /**
      * Deletes an order by its order ID.
      * <p>
-     * The method reads all order records, removes the matching order, and rewrites the file.
+     * The order is located through the primary-key index of "assignment/data/orders.txt"
+     * and a tombstone is appended for it; the file is not rewritten. The deleted record is
+     * dropped when the file is next compacted.
      * </p>
      *
      * @param orderId the unique identifier of the order to delete.
      * @return {@code true} if the order was found and deleted; {@code false} otherwise.
      */
     public boolean deleteOrder(String orderId) {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/orders.txt");
-        boolean found = false;
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (orderId.equals(json.get("order_id"))) {
-                        found = true;
-                        continue; // Skip this record.
-                    }
-                } catch (ParseException pe) {
-                    // Preserve unparseable lines.
-                }
-                lines.add(line);
-            }
-        } catch (IOException ex) {
-            System.err.println("Error reading orders file: " + ex.getMessage());
-            return false;
-        }
-
-        if (!found) {
-            System.out.println("Order with ID " + orderId + " not found.");
-            return false;
-        }
-
-        // Rewrite the orders file without the deleted order.
-        try (FileWriter writer = new FileWriter("assignment/data/orders.txt", false)) {
-            for (String ln : lines) {
-                writer.write(ln + System.lineSeparator());
+        try {
+            if (RecordFile.ORDERS.delete(orderId)) {
+                return true;
             }
-            return true;
         } catch (IOException ex) {
             System.err.println("Error writing orders file: " + ex.getMessage());
             return false;
         }
+        System.out.println("Order with ID " + orderId + " not found.");
+        return false;
     }
 
     /**
@@ -187,7 +169,9 @@ public class OrderOperation {
     /**
      * Retrieves a paginated list of orders for a specific customer or all customers.
      * <p>
-     * If {@code customerId} is "all", orders for all customers are returned.
+     * If {@code customerId} is "all", orders for all customers are returned by seeking to the
+     * page through the order page table; otherwise the customer's orders are located through
+     * the user_id index.
      * Orders are displayed in pages of 10 records each.
      * </p>
      *
@@ -196,100 +180,130 @@ public class OrderOperation {
      * @return an {@code OrderListResult} containing the paginated order list.
      */
     public OrderListResult getOrderList(String customerId, int pageNumber) {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/orders.txt");
+        File file = RecordFile.ORDERS.getFile();
 
         if (!file.exists()) {
             System.err.println("Orders file not found: " + file.getAbsolutePath());
             return new OrderListResult(new ArrayList<>(), 1, 1);
         }
 
-        // Read order records from the file.
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (!line.isEmpty()) {
-                    lines.add(line);
-                }
+        if (!"all".equalsIgnoreCase(customerId)) {
+            return getCustomerOrderList(customerId, pageNumber);
+        }
+
+        // Seek straight to the requested page and decode only its records.
+        int totalPages;
+        List<String> lines;
+        try {
+            totalPages = orderPages.getPageCount();
+            if (totalPages == 0) {
+                return new OrderListResult(new ArrayList<>(), 1, 1);
             }
+            if (pageNumber < 1) {
+                pageNumber = 1;
+            } else if (pageNumber > totalPages) {
+                pageNumber = totalPages;
+            }
+            lines = orderPages.readPage(pageNumber);
         } catch (IOException ex) {
             System.err.println("Error reading orders file: " + ex.getMessage());
             return new OrderListResult(new ArrayList<>(), 1, 1);
         }
 
-        List<Order> allOrders = new ArrayList<>();
+        List<Order> pageOrders = new ArrayList<>();
         for (String line : lines) {
-            try {
-                JSONObject json = (JSONObject) parser.parse(line);
-                if ("all".equalsIgnoreCase(customerId) || customerId.equals(json.get("user_id"))) {
-                    String orderId = (String) json.get("order_id");
-                    String userId = (String) json.get("user_id");
-                    String proId = (String) json.get("pro_id");
-                    String orderTime = (String) json.get("order_time");
-
-                    if (orderId == null || userId == null || proId == null || orderTime == null) {
-                        System.err.println("Missing key in order record: " + line);
-                        continue;
-                    }
-
-                    allOrders.add(new Order(orderId, userId, proId, orderTime));
-                }
-            } catch (ParseException e) {
-                System.err.println("Error parsing order record: \"" + line + "\". Exception: " + e);
+            Order order = parseOrder(line);
+            if (order != null) {
+                pageOrders.add(order);
             }
         }
 
-        int totalOrders = allOrders.size();
-        if (totalOrders == 0) {
-            return new OrderListResult(new ArrayList<>(), 1, 1);
-        }
-
-        int totalPages = (int) Math.ceil(totalOrders / 10.0);
-        if (pageNumber < 1) {
-            pageNumber = 1;
-        } else if (pageNumber > totalPages) {
-            pageNumber = totalPages;
-        }
-
-        int start = (pageNumber - 1) * 10;
-        int end = Math.min(start + 10, totalOrders);
-        List<Order> pageOrders = allOrders.subList(start, end);
-
         return new OrderListResult(pageOrders, pageNumber, totalPages);
     }
 
     /**
-    * Converts the given LinkedHashMap into a JSON string with keys output in the specified order.
-    *
-    * @param orderedMap the map containing keys and values.
-    * @param keyOrder   the list of keys in the desired order.
-    * @return a JSON formatted string with the keys in the specified order.
-    */
-    private String toOrderedJSONString(LinkedHashMap<String, Object> orderedMap, List<String> keyOrder) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        boolean first = true;
-        // Iterate through the keys in the desired order.
-        for (String key : keyOrder) {
-            if (orderedMap.containsKey(key)) {
-                if (!first) {
-                    sb.append(",");
+     * Retrieves one page of a single customer's orders through the user_id index.
+     * <p>
+     * Only the positions of the customer's own orders are consulted, and only the records on
+     * the requested page are read from "assignment/data/orders.txt".
+     * </p>
+     *
+     * @param customerId the unique identifier of the customer.
+     * @param pageNumber the page number to retrieve.
+     * @return an {@code OrderListResult} containing the paginated order list.
+     */
+    private OrderListResult getCustomerOrderList(String customerId, int pageNumber) {
+        // Hold the read lock so a compaction cannot move the records between the lookup and the reads.
+        Lock lock = RecordFile.ORDERS.readLock();
+        lock.lock();
+        try {
+            List<RecordIndex.Slot> slots;
+            try {
+                slots = RecordFile.ORDERS.getIndex("user_id").lookupAll(customerId);
+            } catch (IOException ex) {
+                System.err.println("Error reading orders file: " + ex.getMessage());
+                return new OrderListResult(new ArrayList<>(), 1, 1);
+            }
+
+            int totalOrders = slots.size();
+            if (totalOrders == 0) {
+                return new OrderListResult(new ArrayList<>(), 1, 1);
+            }
+
+            int totalPages = (int) Math.ceil(totalOrders / 10.0);
+            if (pageNumber < 1) {
+                pageNumber = 1;
+            } else if (pageNumber > totalPages) {
+                pageNumber = totalPages;
+            }
+
+            int start = (pageNumber - 1) * 10;
+            int end = Math.min(start + 10, totalOrders);
+            List<Order> pageOrders = new ArrayList<>();
+            try {
+                for (String line : RecordFile.ORDERS.readAll(slots.subList(start, end))) {
+                    Order order = parseOrder(line.trim());
+                    if (order != null) {
+                        pageOrders.add(order);
+                    }
                 }
-            sb.append("\"").append(key).append("\":");
-            sb.append(JSONValue.toJSONString(orderedMap.get(key)));
-            first = false;
+            } catch (IOException ex) {
+                System.err.println("Error reading orders file: " + ex.getMessage());
             }
+
+            return new OrderListResult(pageOrders, pageNumber, totalPages);
+        } finally {
+            lock.unlock();
         }
-        sb.append("}");
-        return sb.toString();
     }
 
+    /**
+     * Parses a single order record.
+     *
+     * @param line a JSON-formatted order record.
+     * @return the corresponding {@link Model.Order}, or null if the record is malformed.
+     */
+    private Order parseOrder(String line) {
+        try {
+            Order order = RecordCodec.decodeOrder(line);
+            if (order.getOrderId() == null || order.getUserId() == null
+                    || order.getProId() == null || order.getOrderTime() == null) {
+                System.err.println("Missing key in order record: " + line);
+                return null;
+            }
+            return order;
+        } catch (ParseException e) {
+            System.err.println("Error parsing order record: \"" + line + "\". Exception: " + e);
+            return null;
+        }
+    }
 
     /**
     * Generates test order data for multiple customers.
     * <p>
     * The method assigns random products to customers and generates a random order date 
     * for each order. It ensures that existing order records are cleared before adding new test orders.
+    * The orders are appended to the orders file in one batch.
     * </p>
     */
     public void generateTestOrderData() {
@@ -315,6 +329,7 @@ public class OrderOperation {
         deleteAllOrders();
 
         java.util.Random rand = new java.util.Random();
+        List<String> orderRecords = new ArrayList<>();
 
         // Generate random orders for each customer.
         for (String customerId : customerIds) {
@@ -333,41 +348,188 @@ public class OrderOperation {
                 int second = rand.nextInt(60);
                 String orderTime = String.format("%02d-%02d-%04d_%02d:%02d:%02d", day, month, year, hour, minute, second);
 
-                // Create the order.
-                createAnOrder(customerId, productId, orderTime);
+                // Encode the order with the next ID from the allocator.
+                String orderId = generateUniqueOrderId();
+                if (orderId == null) {
+                    return;
+                }
+                orderRecords.add(RecordCodec.encodeOrder(new Order(orderId, customerId, productId, orderTime)));
             }
         }
+
+        // Write all the orders at once rather than one append per order.
+        try {
+            RecordFile.ORDERS.append(orderRecords);
+        } catch (IOException e) {
+            System.err.println("Error writing order to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates a large set of test orders and replaces the orders file with them.
+     * <p>
+     * Customers are drawn from the customer records in "assignment/data/users.txt" and products
+     * from "assignment/data/products.txt". The order IDs are reserved from the {@link IdAllocator}
+     * as one consecutive block. Orders are produced in chunks on all available cores; every chunk
+     * has its own generator split from the seed in chunk order, so the same seed and data files
+     * always give the same orders, apart from the IDs. The chunks
+     * are streamed through one buffered writer, so memory use does not grow with the order count.
+     * </p>
+     *
+     * @param orderCount the number of orders to generate.
+     * @param seed       the seed for the random generator.
+     * @return true if the orders file was written; false otherwise.
+     */
+    public boolean generateBulkOrderData(long orderCount, long seed) {
+        Set<String> customerIds = new LinkedHashSet<>();
+        Set<String> productIds = new LinkedHashSet<>();
+        try {
+            RecordFile.USERS.scanRaw(0, (offset, buffer, length) -> {
+                try {
+                    if ("customer".equals(RecordCodec.extractField(buffer, 0, length, "user_role"))) {
+                        String userId = RecordCodec.extractField(buffer, 0, length, "user_id");
+                        if (userId != null) customerIds.add(userId);
+                    }
+                } catch (ParseException pe) {
+                    // Skip malformed user records.
+                }
+                return true;
+            });
+            RecordFile.PRODUCTS.scanRaw(0, (offset, buffer, length) -> {
+                try {
+                    String proId = RecordCodec.extractField(buffer, 0, length, "pro_id");
+                    if (proId != null) productIds.add(proId);
+                } catch (ParseException pe) {
+                    // Skip malformed product records.
+                }
+                return true;
+            });
+        } catch (IOException ex) {
+            System.err.println("Error reading data files: " + ex.getMessage());
+            return false;
+        }
+        if (customerIds.isEmpty() || productIds.isEmpty()) {
+            System.out.println("Bulk order generation needs at least one customer and one product.");
+            return false;
+        }
+
+        long firstId;
+        try {
+            firstId = IdAllocator.ORDERS.reserve(orderCount);
+        } catch (IOException ex) {
+            System.err.println("Error allocating order IDs: " + ex.getMessage());
+            return false;
+        }
+
+        String[] customers = customerIds.toArray(new String[0]);
+        String[] products = productIds.toArray(new String[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "order-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        SplittableRandom root = new SplittableRandom(seed);
+
+        try {
+            RecordFile.ORDERS.replace(out -> {
+                // Keep a bounded window of chunks in flight and write them back in order.
+                Deque<Future<byte[]>> pending = new ArrayDeque<>();
+                long submitted = 0;
+                while (submitted < orderCount || !pending.isEmpty()) {
+                    while (submitted < orderCount && pending.size() < threads * 2) {
+                        long firstOrder = firstId + submitted;
+                        int size = (int) Math.min(BULK_CHUNK_SIZE, orderCount - submitted);
+                        SplittableRandom random = root.split();
+                        pending.add(pool.submit(() -> generateOrderChunk(firstOrder, size, random, customers, products)));
+                        submitted += size;
+                    }
+                    try {
+                        out.write(pending.poll().get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Order generation interrupted");
+                    } catch (ExecutionException e) {
+                        throw new IOException("Order generation failed", e.getCause());
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            System.err.println("Error writing orders file: " + ex.getMessage());
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println(orderCount + " orders generated for " + customers.length + " customers and "
+                           + products.length + " products.");
+        return true;
+    }
+
+    /**
+     * Produces one chunk of test orders as UTF-8 encoded lines.
+     *
+     * @param firstOrder the ID number of the first order in the chunk.
+     * @param count      the number of orders in the chunk.
+     * @param random     the chunk's own random generator.
+     * @param customers  the customer IDs to choose from.
+     * @param products   the product IDs to choose from.
+     * @return the encoded records, each followed by a line separator.
+     */
+    private static byte[] generateOrderChunk(long firstOrder, int count, SplittableRandom random,
+                                             String[] customers, String[] products) {
+        String separator = System.lineSeparator();
+        StringBuilder chunk = new StringBuilder(count * 112);
+        char[] orderTime = "00-00-2024_00:00:00".toCharArray();
+        for (int i = 0; i < count; i++) {
+            String customerId = customers[random.nextInt(customers.length)];
+            String productId = products[random.nextInt(products.length)];
+            // Same distribution as generateTestOrderData: any time in 2024, days 1 to 28.
+            putTwoDigits(orderTime, 0, 1 + random.nextInt(28));
+            putTwoDigits(orderTime, 3, 1 + random.nextInt(12));
+            putTwoDigits(orderTime, 11, random.nextInt(24));
+            putTwoDigits(orderTime, 14, random.nextInt(60));
+            putTwoDigits(orderTime, 17, random.nextInt(60));
+            Order order = new Order(IdAllocator.ORDERS.format(firstOrder + i), customerId, productId, new String(orderTime));
+            chunk.append(RecordCodec.encodeOrder(order)).append(separator);
+        }
+        return chunk.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a value between 0 and 99 as two digits.
+     */
+    private static void putTwoDigits(char[] target, int index, int value) {
+        target[index] = (char) ('0' + value / 10);
+        target[index + 1] = (char) ('0' + value % 10);
     }
 
     /**
      * Retrieves all orders from the orders file.
      * <p>
-     * The method reads "assignment/data/orders.txt" and parses JSON records into a list of {@code Order} objects.
+     * The method reads "assignment/data/orders.txt" and decodes each record straight from
+     * its bytes into an {@code Order} object.
      * </p>
      *
      * @return a list containing all orders.
      */
     private List<Order> getAllOrders() {
         List<Order> orders = new ArrayList<>();
-        File file = new File("assignment/data/orders.txt");
+        File file = RecordFile.ORDERS.getFile();
+        if (!file.exists()) {
+            System.err.println("Orders file not found: " + file.getAbsolutePath());
+            return orders;
+        }
 
         // Read order records from the file.
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
+        try {
+            RecordFile.ORDERS.scanRaw(0, (offset, buffer, length) -> {
                 try {
-                    // Parse JSON order data.
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    String orderId = (String) json.get("order_id");
-                    String userId = (String) json.get("user_id");
-                    String proId = (String) json.get("pro_id");
-                    String orderTime = (String) json.get("order_time");
-                    orders.add(new Order(orderId, userId, proId, orderTime));
+                    orders.add(RecordCodec.decodeOrder(buffer, 0, length));
                 } catch (ParseException pe) {
                     System.err.println("Error parsing order record: " + pe.getMessage());
                 }
-            }
+                return true;
+            });
         } catch (IOException ex) {
             System.err.println("Error reading orders file: " + ex.getMessage());
         }
@@ -378,9 +540,9 @@ public class OrderOperation {
      * Deletes all orders by clearing the orders file.
      */
     public void deleteAllOrders() {
-        File file = new File("assignment/data/orders.txt");
-        try (FileWriter writer = new FileWriter(file, false)) {
+        try {
             // Overwrite file with an empty string to delete all records.
+            RecordFile.ORDERS.truncate();
         } catch (IOException ex) {
             System.err.println("Error clearing orders file: " + ex.getMessage());
         }
@@ -389,48 +551,56 @@ public class OrderOperation {
     /**
      * Retrieves all orders associated with a specific customer.
      * <p>
-     * The method filters orders based on customer ID.
+     * The customer's orders are located through the user_id index, so only their records are read.
      * </p>
      *
      * @param customerId the unique identifier of the customer.
      * @return a list of orders associated with the given customer.
      */
     private List<Order> getAllOrdersForCustomer(String customerId) {
-        List<Order> allOrders = getAllOrders();
         List<Order> customerOrders = new ArrayList<>();
-        for (Order o : allOrders) {
-            if (customerId.equals(o.getUserId())) {
-                customerOrders.add(o);
+        Lock lock = RecordFile.ORDERS.readLock();
+        lock.lock();
+        try {
+            List<RecordIndex.Slot> slots = RecordFile.ORDERS.getIndex("user_id").lookupAll(customerId);
+            for (String line : RecordFile.ORDERS.readAll(slots)) {
+                Order order = parseOrder(line.trim());
+                if (order != null) {
+                    customerOrders.add(order);
+                }
             }
+        } catch (IOException ex) {
+            System.err.println("Error reading orders file: " + ex.getMessage());
+        } finally {
+            lock.unlock();
         }
         return customerOrders;
     }
 
     /**
-     * Generates a bar chart depicting monthly consumption for a single customer.
+     * Totals the current price of the ordered products for each month of the year.
      * <p>
-     * The method aggregates order prices per month and creates a BarChart using JavaFX.
-     * The chart is saved as an image in "assignment/data/figure".
+     * The product lookup table is loaded once and every order is joined against it in a
+     * single pass, so the cost is linear in the number of orders.
      * </p>
      *
-     * @param customerId the unique identifier of the customer.
+     * @param orders the orders to aggregate.
+     * @return a map from month (1 to 12) to the total consumption in that month.
      */
-    public void generateSingleCustomerConsumptionFigure(String customerId) {
-    new JFXPanel(); 
-    Platform.runLater(() -> {
-        List<Order> customerOrders = getAllOrdersForCustomer(customerId);
-        
+    private Map<Integer, Double> sumMonthlyConsumption(List<Order> orders) {
+        Map<String, Product> productLookup = ProductOperation.getInstance().getProductLookup();
+
         Map<Integer, Double> consumption = new HashMap<>();
         for (int m = 1; m <= 12; m++) {
             consumption.put(m, 0.0);
         }
-        
+
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss");
-        for (Order order : customerOrders) {
+        for (Order order : orders) {
             try {
                 LocalDateTime orderTime = LocalDateTime.parse(order.getOrderTime(), formatter);
                 int month = orderTime.getMonthValue();
-                Product product = ProductOperation.getInstance().getProductById(order.getProId());
+                Product product = productLookup.get(order.getProId());
                 if (product != null) {
                     double price = product.getProCurrentPrice();
                     consumption.put(month, consumption.get(month) + price);
@@ -439,6 +609,23 @@ public class OrderOperation {
                 System.err.println("Error processing order " + order.getOrderId() + ": " + e.getMessage());
             }
         }
+        return consumption;
+    }
+
+    /**
+     * Generates a bar chart depicting monthly consumption for a single customer.
+     * <p>
+     * The method aggregates order prices per month and creates a BarChart using JavaFX.
+     * The chart is saved as an image in "assignment/data/figure".
+     * </p>
+     *
+     * @param customerId the unique identifier of the customer.
+     */
+    public void generateSingleCustomerConsumptionFigure(String customerId) {
+    new JFXPanel(); 
+    Platform.runLater(() -> {
+        List<Order> customerOrders = getAllOrdersForCustomer(customerId);
+        Map<Integer, Double> consumption = sumMonthlyConsumption(customerOrders);
 
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setLabel("Month");
@@ -455,7 +642,7 @@ public class OrderOperation {
 
         Scene scene = new Scene(new StackPane(barChart), 800, 600);
         WritableImage image = scene.snapshot(null);
-        File folder = new File("assignment/data/figure");
+        File folder = new File(RecordFile.DATA_DIRECTORY, "figure");
         if (!folder.exists()) folder.mkdirs();
         File outputFile = new File(folder, "single_customer_consumption_" + customerId + ".png");
         try {
@@ -481,36 +668,9 @@ public class OrderOperation {
         
         // Ensure JavaFX operations run on the JavaFX Application Thread.
         Platform.runLater(() -> {
-            // Retrieve all orders from the data store.
+            // Retrieve all orders from the data store and total them per month.
             List<Order> allOrders = getAllOrders();
-            
-            // Prepare a consumption map that will hold total consumption for each month (1 to 12).
-            Map<Integer, Double> consumption = new HashMap<>();
-            for (int m = 1; m <= 12; m++) {
-                consumption.put(m, 0.0);
-            }
-            
-            // Define a formatter to parse the order timestamp.
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy_HH:mm:ss");
-            
-            // Iterate over each order to accumulate consumption data.
-            for (Order order : allOrders) {
-                try {
-                    // Parse the order time into a LocalDateTime object.
-                    LocalDateTime orderTime = LocalDateTime.parse(order.getOrderTime(), formatter);
-                    int month = orderTime.getMonthValue();
-                    
-                    // Retrieve the product associated with this order.
-                    Product product = ProductOperation.getInstance().getProductById(order.getProId());
-                    if (product != null) {
-                        double price = product.getProCurrentPrice();
-                        // Update the consumption total for the corresponding month.
-                        consumption.put(month, consumption.get(month) + price);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing order " + order.getOrderId() + ": " + e.getMessage());
-                }
-            }
+            Map<Integer, Double> consumption = sumMonthlyConsumption(allOrders);
             
             // Set up the chart axes.
             CategoryAxis xAxis = new CategoryAxis();
@@ -535,7 +695,7 @@ public class OrderOperation {
             WritableImage image = scene.snapshot(null);
             
             // Ensure the output folder exists.
-            File folder = new File("assignment/data/figure");
+            File folder = new File(RecordFile.DATA_DIRECTORY, "figure");
             if (!folder.exists()) {
                 folder.mkdirs();
             }
@@ -568,15 +728,28 @@ public class OrderOperation {
         Platform.runLater(() -> {
             List<Order> allOrders = getAllOrders();
 
-            // Count occurrences of each product in orders.
-            Map<String, Integer> productCounts = new HashMap<>();
+            // Count occurrences of each product in orders, indexed by product ID code.
+            int[] productCounts = new int[SymbolTable.PRODUCT_IDS.size()];
             for (Order order : allOrders) {
                 String prodId = order.getProId();
-                productCounts.put(prodId, productCounts.getOrDefault(prodId, 0) + 1);
+                if (prodId == null) continue;
+                // Orders are decoded through the table, so their IDs are in it; anything else is
+                // skipped rather than added.
+                int code = SymbolTable.PRODUCT_IDS.find(prodId);
+                if (code < 0) continue;
+                if (code >= productCounts.length) {
+                    productCounts = Arrays.copyOf(productCounts, SymbolTable.PRODUCT_IDS.size());
+                }
+                productCounts[code]++;
             }
 
             // Sort products by order count in descending order.
-            List<Map.Entry<String, Integer>> sortedEntries = new ArrayList<>(productCounts.entrySet());
+            List<Map.Entry<String, Integer>> sortedEntries = new ArrayList<>();
+            for (int code = 0; code < productCounts.length; code++) {
+                if (productCounts[code] > 0) {
+                    sortedEntries.add(new AbstractMap.SimpleEntry<>(SymbolTable.PRODUCT_IDS.symbol(code), productCounts[code]));
+                }
+            }
             sortedEntries.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
 
             // Extract the top 10 best-selling products.
@@ -593,11 +766,12 @@ public class OrderOperation {
             BarChart<String, Number> barChart = new BarChart<>(xAxis, yAxis);
             barChart.setTitle("Top 10 Best-Selling Products");
 
-            // Populate the chart with data.
+            // Populate the chart with data, resolving names from a single product lookup table.
+            Map<String, Product> productLookup = ProductOperation.getInstance().getProductLookup();
             XYChart.Series<String, Number> series = new XYChart.Series<>();
             for (Map.Entry<String, Integer> entry : top10) {
                 // Retrieve product name; fallback to product ID if name not found.
-                Product product = ProductOperation.getInstance().getProductById(entry.getKey());
+                Product product = productLookup.get(entry.getKey());
                 String productName = (product != null) ? product.getProName() : entry.getKey();
                 series.getData().add(new XYChart.Data<>(productName, entry.getValue()));
             }
@@ -606,7 +780,7 @@ public class OrderOperation {
             // Create a JavaFX scene, capture the chart snapshot, and save the image.
             Scene scene = new Scene(new StackPane(barChart), 800, 600);
             WritableImage image = scene.snapshot(null);
-            File folder = new File("assignment/data/figure");
+            File folder = new File(RecordFile.DATA_DIRECTORY, "figure");
             if (!folder.exists()) folder.mkdirs();
             File outputFile = new File(folder, "top10_bestsellers.png");
 
@@ -0,0 +1,260 @@
+package Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+/**
+ * The {@code PageTable} class is a sparse table of page start positions over a {@link RecordFile}.
+ * <p>
+ * It remembers the byte offset of the first record of every page, so any page can be read by
+ * seeking straight to it and decoding only the records on that page. An optional filter selects
+ * which records are paged, for example only customers among all users. Deleted records are not
+ * paged. The table is rebuilt with one scan when the file changes underneath it, and followed in
+ * place otherwise: an appended record joins the last page, and a deleted record is taken off its
+ * page, which is dropped once it has no records left. Pages therefore hold at most the page size,
+ * and fewer after deletes until the next rebuild.
+ * </p>
+ */
+final class PageTable implements RecordFile.ChangeListener {
+
+    /** The data file being paged. */
+    private final RecordFile recordFile;
+
+    /** Number of records on each page. */
+    private final int pageSize;
+
+    /** Selects the records that are paged, or null for every record. */
+    private final Predicate<String> filter;
+
+    /** Byte offset of the first record of each page; only the first {@link #pageCount} entries are used. */
+    private long[] pageOffsets;
+
+    /** Number of paged records on each page; only the first {@link #pageCount} entries are used. */
+    private int[] pageRecords;
+
+    /** Number of pages recorded in {@link #pageOffsets}. */
+    private int pageCount;
+
+    /** Number of records that pass the filter. */
+    private int recordCount;
+
+    /** Whether the table currently describes the data file. */
+    private boolean loaded;
+
+    /** Size of the data file that the table describes. */
+    private long dataLength;
+
+    /** Modification time of the data file that the table describes. */
+    private long dataModified;
+
+    /**
+     * Constructs an empty page table; it is built on first use.
+     *
+     * @param recordFile the data file being paged.
+     * @param pageSize   the number of records per page.
+     * @param filter     selects the records that are paged, or null for every record.
+     */
+    PageTable(RecordFile recordFile, int pageSize, Predicate<String> filter) {
+        this.recordFile = recordFile;
+        this.pageSize = pageSize;
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the number of records that pass the filter.
+     *
+     * @return the record count.
+     * @throws IOException if the table has to be rebuilt and the data file cannot be read.
+     */
+    int getRecordCount() throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                return recordCount;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of pages.
+     *
+     * @return the page count; 0 if no record passes the filter.
+     * @throws IOException if the table has to be rebuilt and the data file cannot be read.
+     */
+    int getPageCount() throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                return pageCount;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the records on one page.
+     *
+     * @param pageNumber the 1-based page number.
+     * @return the record lines on the page, or an empty list if the page does not exist.
+     * @throws IOException if the data file cannot be read.
+     */
+    List<String> readPage(int pageNumber) throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                List<String> lines = new ArrayList<>(pageSize);
+                if (pageNumber < 1 || pageNumber > pageCount) {
+                    return lines;
+                }
+                int records = pageRecords[pageNumber - 1];
+                recordFile.scan(pageOffsets[pageNumber - 1], (offset, length, line) -> {
+                    if (filter == null || filter.test(line)) {
+                        lines.add(line.trim());
+                    }
+                    return lines.size() < records;
+                });
+                return lines;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void recordAppended(long previousSize, long previousModified, long offset, int length, String line) {
+        if (!loaded || previousSize != dataLength || previousModified != dataModified) {
+            invalidate();
+            return;
+        }
+        // The records a tombstone deletes are taken off their pages by recordDeleted.
+        if (!RecordCodec.isTombstone(line) && (filter == null || filter.test(line))) {
+            addRecord(offset);
+        }
+        File dataFile = recordFile.getFile();
+        dataLength = dataFile.length();
+        dataModified = dataFile.lastModified();
+    }
+
+    @Override
+    public synchronized void recordPatched(long previousModified, long offset, int length, String previousLine, String line) {
+        // The record keeps its position, so the pages only change if it moved in or out of the filter.
+        File dataFile = recordFile.getFile();
+        if (!loaded || dataLength != dataFile.length() || previousModified != dataModified
+                || (filter != null && filter.test(previousLine) != filter.test(line))) {
+            invalidate();
+            return;
+        }
+        dataModified = dataFile.lastModified();
+    }
+
+    @Override
+    public synchronized void recordDeleted(long offset, int length) {
+        if (!loaded) {
+            return;
+        }
+        if (filter != null) {
+            try {
+                if (!filter.test(recordFile.readAt(offset, length))) {
+                    return;
+                }
+            } catch (IOException e) {
+                invalidate();
+                return;
+            }
+        }
+        removeRecord(offset);
+    }
+
+    @Override
+    public synchronized void invalidate() {
+        loaded = false;
+        pageOffsets = null;
+        pageRecords = null;
+    }
+
+    /**
+     * Counts one more paged record on the last page, opening a new page when that one is full.
+     */
+    private void addRecord(long offset) {
+        if (pageCount == 0 || pageRecords[pageCount - 1] == pageSize) {
+            if (pageCount == pageOffsets.length) {
+                pageOffsets = Arrays.copyOf(pageOffsets, Math.max(16, pageCount * 2));
+                pageRecords = Arrays.copyOf(pageRecords, pageOffsets.length);
+            }
+            pageOffsets[pageCount] = offset;
+            pageRecords[pageCount++] = 0;
+        }
+        pageRecords[pageCount - 1]++;
+        recordCount++;
+    }
+
+    /**
+     * Takes a deleted record off the page it was on, dropping the page if it becomes empty.
+     * <p>
+     * A page's start may itself be the deleted record; reading from it still works because scans
+     * skip deleted records.
+     * </p>
+     */
+    private void removeRecord(long offset) {
+        // The page holding the record is the last one that starts at or before it.
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (pageOffsets[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int page = high;
+        if (page < 0) {
+            return;
+        }
+        recordCount--;
+        if (--pageRecords[page] == 0) {
+            System.arraycopy(pageOffsets, page + 1, pageOffsets, page, pageCount - page - 1);
+            System.arraycopy(pageRecords, page + 1, pageRecords, page, pageCount - page - 1);
+            pageCount--;
+        }
+    }
+
+    /**
+     * Rebuilds the table with one scan if the data file has changed since it was built.
+     */
+    private void ensureCurrent() throws IOException {
+        File dataFile = recordFile.getFile();
+        if (loaded && dataLength == dataFile.length() && dataModified == dataFile.lastModified()) {
+            return;
+        }
+        long length = dataFile.length();
+        long modified = dataFile.lastModified();
+        pageOffsets = new long[16];
+        pageRecords = new int[16];
+        pageCount = 0;
+        recordCount = 0;
+        recordFile.scan((offset, recordLength, line) -> {
+            if (filter == null || filter.test(line)) {
+                addRecord(offset);
+            }
+            return true;
+        });
+        dataLength = length;
+        dataModified = modified;
+        loaded = true;
+    }
+}
@@ -0,0 +1,109 @@
+package Operation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code Postings} class holds the operations shared by the catalog's search indexes on
+ * posting lists: sorted arrays of product ordinals.
+ */
+final class Postings {
+
+    /** Shared empty posting list. */
+    static final int[] EMPTY = new int[0];
+
+    private Postings() {
+    }
+
+    /**
+     * Intersects several posting lists, starting from the shortest so every step stays small.
+     *
+     * @param lists the posting lists; they are reordered by length.
+     * @return a new array with the ordinals present in every list.
+     */
+    static int[] intersectAll(List<int[]> lists) {
+        if (lists.isEmpty()) {
+            return EMPTY;
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists.get(0).clone();
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Intersects two posting lists.
+     *
+     * @param a the first list.
+     * @param b the second list.
+     * @return a new array with the ordinals present in both lists.
+     */
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Merges two posting lists.
+     *
+     * @param a the first list.
+     * @param b the second list.
+     * @return a new array with the ordinals present in either list.
+     */
+    static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                out[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                out[count++] = b[j++];
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Drops removed ordinals from a posting list and shifts the later ones down, matching a
+     * product list with those entries taken out. The remaining ordinals keep their order, so the
+     * list does not have to be sorted.
+     *
+     * @param ordinals the posting list.
+     * @param removed  the removed ordinals, in ascending order.
+     * @return the adjusted list; empty if every ordinal was removed.
+     */
+    static int[] without(int[] ordinals, int[] removed) {
+        int[] kept = new int[ordinals.length];
+        int count = 0;
+        for (int ordinal : ordinals) {
+            int position = Arrays.binarySearch(removed, ordinal);
+            if (position < 0) {
+                // Shift down by the number of removed ordinals before this one.
+                kept[count++] = ordinal - (-position - 1);
+            }
+        }
+        return count == kept.length ? kept : Arrays.copyOf(kept, count);
+    }
+}
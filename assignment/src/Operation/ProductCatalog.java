@@ -0,0 +1,415 @@
+package Operation;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Model.Product;
+
+/**
+ * The {@code ProductCatalog} class is an in-memory snapshot of "assignment/data/products.txt".
+ * <p>
+ * It keeps every product in file order, stored as {@link ProductColumns}, together with a lookup
+ * table from product ID to position, a
+ * {@link ProductTokenIndex} for word search, a {@link ProductTrigramIndex} for substring search
+ * on names and a {@link ProductCompletionIndex} for prefix completion, and remembers the size and modification time of the file it was loaded from so that
+ * {@link ProductOperation} can tell when the snapshot no longer matches the file on disk.
+ * </p>
+ * <p>
+ * Sorted browsing uses one permutation of the product ordinals per sort key, built the first
+ * time that order is requested. A page of a sorted order is then read straight from the
+ * permutation, and a delete drops the removed ordinals from every built permutation instead of
+ * sorting again. Range queries on the prices and the discount use a {@link ProductRangeIndex} per
+ * field, also built on first use and carried over by deletes. The {@link ProductFacetIndex} behind
+ * combined filters is built on the first filter from the columns, and again after a delete.
+ * </p>
+ * <p>
+ * No {@link Product} object is kept: the products handed out are created from the columns when
+ * they are asked for, so callers may change them without affecting the catalog.
+ * </p>
+ */
+class ProductCatalog {
+
+    /** All products in the order they appear in the products file. */
+    private final ProductColumns products;
+
+    /** Position in {@link #products} of each product ID. */
+    private final Map<String, Integer> ordinalsById;
+
+    /** Read-only view of {@link #ordinalsById} that creates the products it returns. */
+    private final Map<String, Product> productLookup;
+
+    /** Inverted index from search tokens to positions in {@link #products}. */
+    private final ProductTokenIndex tokenIndex;
+
+    /** Trigram index over the lower-cased product names. */
+    private final ProductTrigramIndex trigramIndex;
+
+    /** Prefix completion over product names and models. */
+    private final ProductCompletionIndex completionIndex;
+
+    /** Product ordinals in each sort order built so far, keyed by sort key. */
+    private final Map<String, int[]> sortOrders;
+
+    /** Range indexes built so far, keyed by field. */
+    private final Map<String, ProductRangeIndex> rangeIndexes;
+
+    /** Category and bucket bitmaps for filtering, built on the first filter. */
+    private volatile ProductFacetIndex facetIndex;
+
+    /** Length of the products file at the time the snapshot was loaded. */
+    private final long fileLength;
+
+    /** Last-modified time of the products file at the time the snapshot was loaded. */
+    private final long fileModified;
+
+    /**
+     * Constructs a new catalog snapshot.
+     *
+     * @param products     the products read from the file, in file order.
+     * @param tokenIndex   the token index over the products.
+     * @param fileLength   the length of the products file when it was read.
+     * @param fileModified the last-modified time of the products file when it was read.
+     */
+    ProductCatalog(ProductColumns products, ProductTokenIndex tokenIndex, long fileLength, long fileModified) {
+        this(products, ordinalsById(products), tokenIndex, ProductTrigramIndex.build(products),
+                ProductCompletionIndex.build(products), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(),
+                fileLength, fileModified);
+    }
+
+    /**
+     * Constructs a catalog snapshot from indexes that are already built.
+     */
+    private ProductCatalog(ProductColumns products, Map<String, Integer> ordinalsById, ProductTokenIndex tokenIndex,
+                           ProductTrigramIndex trigramIndex, ProductCompletionIndex completionIndex,
+                           Map<String, int[]> sortOrders, Map<String, ProductRangeIndex> rangeIndexes,
+                           long fileLength, long fileModified) {
+        this.products = products;
+        this.ordinalsById = ordinalsById;
+        this.tokenIndex = tokenIndex;
+        this.trigramIndex = trigramIndex;
+        this.completionIndex = completionIndex;
+        this.sortOrders = sortOrders;
+        this.rangeIndexes = rangeIndexes;
+        this.productLookup = new ProductLookup();
+        this.fileLength = fileLength;
+        this.fileModified = fileModified;
+    }
+
+    /**
+     * Maps each product ID to its position.
+     */
+    private static Map<String, Integer> ordinalsById(ProductColumns products) {
+        Map<String, Integer> ordinals = new HashMap<>(products.size() * 2);
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            // Keep the first record for a duplicated ID, which is what a top-down file scan returns.
+            ordinals.putIfAbsent(products.id(ordinal), ordinal);
+        }
+        return ordinals;
+    }
+
+    /**
+     * Returns all products in file order.
+     *
+     * @return an unmodifiable list of the catalog's products.
+     */
+    List<Product> getProducts() {
+        return products.asList();
+    }
+
+    /**
+     * Returns the catalog's products as columns, for aggregations that scan one field.
+     *
+     * @return the {@link ProductColumns}.
+     */
+    ProductColumns getColumns() {
+        return products;
+    }
+
+    /**
+     * Returns the product with the given ID.
+     *
+     * @param productId the product ID to look up.
+     * @return the matching product, or null if the catalog does not contain it.
+     */
+    Product getProductById(String productId) {
+        Integer ordinal = ordinalsById.get(productId);
+        return ordinal == null ? null : products.product(ordinal);
+    }
+
+    /**
+     * Returns the product lookup table keyed by product ID.
+     *
+     * @return an unmodifiable map of product ID to product.
+     */
+    Map<String, Product> getProductLookup() {
+        return productLookup;
+    }
+
+    /**
+     * Read-only map from product ID to product that creates each product when it is looked up.
+     */
+    private final class ProductLookup extends AbstractMap<String, Product> {
+
+        @Override
+        public Product get(Object key) {
+            Integer ordinal = ordinalsById.get(key);
+            return ordinal == null ? null : products.product(ordinal);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return ordinalsById.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return ordinalsById.size();
+        }
+
+        @Override
+        public Set<Entry<String, Product>> entrySet() {
+            return new AbstractSet<Entry<String, Product>>() {
+                @Override
+                public Iterator<Entry<String, Product>> iterator() {
+                    Iterator<Entry<String, Integer>> ordinals = ordinalsById.entrySet().iterator();
+                    return new Iterator<Entry<String, Product>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return ordinals.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Product> next() {
+                            Entry<String, Integer> entry = ordinals.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), products.product(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ordinalsById.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the token index over the catalog's products.
+     *
+     * @return the {@link ProductTokenIndex}.
+     */
+    ProductTokenIndex getTokenIndex() {
+        return tokenIndex;
+    }
+
+    /**
+     * Returns the products that contain every token of the query in their name, model or category.
+     *
+     * @param query the search text.
+     * @return the matching products in file order.
+     */
+    List<Product> search(String query) {
+        return select(tokenIndex.search(query));
+    }
+
+    /**
+     * Returns the products that match every word of the query within the given edit distance.
+     *
+     * @param query       the search text.
+     * @param maxDistance the largest edit distance accepted per word.
+     * @return the matching products in file order.
+     */
+    List<Product> fuzzySearch(String query, int maxDistance) {
+        return select(tokenIndex.fuzzySearch(query, maxDistance));
+    }
+
+    /**
+     * Returns the products whose name contains the keyword, ignoring case.
+     *
+     * @param keyword the keyword to search for.
+     * @return the matching products in file order.
+     */
+    List<Product> searchNames(String keyword) {
+        return select(trigramIndex.search(keyword));
+    }
+
+    /**
+     * Returns the best products whose name contains the keyword, ignoring case.
+     *
+     * @param keyword the keyword to search for.
+     * @param sortKey a sort key known to {@link ProductRanking}, ranking the matches.
+     * @param limit   the maximum number of products to return.
+     * @return up to {@code limit} matching products, best first.
+     */
+    List<Product> searchNamesTop(String keyword, String sortKey, int limit) {
+        return select(ProductRanking.top(products, trigramIndex.search(keyword), sortKey, limit));
+    }
+
+    /**
+     * Completes a prefix to product names and models.
+     *
+     * @param prefix the typed text.
+     * @param limit  the maximum number of completions.
+     * @return the completions, most liked first.
+     */
+    List<String> complete(String prefix, int limit) {
+        return completionIndex.complete(prefix, limit);
+    }
+
+    /**
+     * Returns a range of the products in a sort order.
+     *
+     * @param sortKey a sort key known to {@link ProductRanking}.
+     * @param from    the first position, inclusive.
+     * @param to      the last position, exclusive.
+     * @return the products at those positions of the sort order.
+     */
+    List<Product> sortedRange(String sortKey, int from, int to) {
+        int[] sorted = sortOrders.computeIfAbsent(sortKey,
+                key -> ProductRanking.sort(products, key));
+        return select(Arrays.copyOfRange(sorted, from, to));
+    }
+
+    /**
+     * Returns the products whose field value lies within a range, optionally in one category.
+     *
+     * @param field    a field key known to {@link ProductRangeIndex}.
+     * @param min      the smallest value accepted, inclusive.
+     * @param max      the largest value accepted, inclusive.
+     * @param category the category to keep, ignoring case, or null for every category.
+     * @return the ordinals of the matching products, by ascending value; null if the field is unknown.
+     */
+    int[] range(String field, double min, double max, String category) {
+        if (ProductRangeIndex.column(products, field) == null) {
+            return null;
+        }
+        ProductRangeIndex index = rangeIndexes.computeIfAbsent(field,
+                key -> ProductRangeIndex.build(ProductRangeIndex.column(products, key)));
+        int[] ordinals = index.range(min, max);
+        if (category == null) {
+            return ordinals;
+        }
+        int count = 0;
+        for (int ordinal : ordinals) {
+            if (category.equalsIgnoreCase(products.category(ordinal))) {
+                ordinals[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(ordinals, count);
+    }
+
+    /**
+     * Filters the products by category, price bucket, discount bucket and like count.
+     *
+     * @param category       the category to keep, compared without case, or null for every category.
+     * @param priceBucket    a price bucket label, or null for every price.
+     * @param discountBucket a discount bucket label, or null for every discount.
+     * @param minLikes       the smallest like count to keep.
+     * @return the matching ordinals with their counts per category and bucket.
+     */
+    ProductFacetIndex.Selection filter(String category, String priceBucket, String discountBucket, int minLikes) {
+        return facets().filter(category, priceBucket, discountBucket, minLikes);
+    }
+
+    /**
+     * Counts every product per category, price bucket and discount bucket.
+     *
+     * @return all ordinals with their counts per category and bucket.
+     */
+    ProductFacetIndex.Selection counts() {
+        return facets().counts();
+    }
+
+    /**
+     * Returns the facet index, building it on first use.
+     */
+    private ProductFacetIndex facets() {
+        ProductFacetIndex index = facetIndex;
+        if (index == null) {
+            index = ProductFacetIndex.build(products);
+            facetIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the products at the given ordinals.
+     *
+     * @param ordinals positions in the catalog's product list.
+     * @return the products, in the order of the ordinals.
+     */
+    List<Product> select(int[] ordinals) {
+        List<Product> selected = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            selected.add(products.product(ordinal));
+        }
+        return selected;
+    }
+
+    /**
+     * Returns a catalog without the products that have the given ID, for a file in which they
+     * have just been deleted. The ID lookup table, the token, trigram and completion indexes and
+     * the built sort orders and range indexes are carried over rather than rebuilt.
+     *
+     * @param productId    the ID of the deleted products.
+     * @param fileLength   the length of the products file after the delete.
+     * @param fileModified the last-modified time of the products file after the delete.
+     * @return the new catalog.
+     */
+    ProductCatalog without(String productId, long fileLength, long fileModified) {
+        int[] removed = new int[products.size()];
+        int removedCount = 0;
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            if (productId.equals(products.id(ordinal))) {
+                removed[removedCount++] = ordinal;
+            }
+        }
+        removed = Arrays.copyOf(removed, removedCount);
+        Map<String, int[]> remainingOrders = new ConcurrentHashMap<>();
+        for (Map.Entry<String, int[]> entry : sortOrders.entrySet()) {
+            remainingOrders.put(entry.getKey(), Postings.without(entry.getValue(), removed));
+        }
+        Map<String, ProductRangeIndex> remainingRanges = new ConcurrentHashMap<>();
+        for (Map.Entry<String, ProductRangeIndex> entry : rangeIndexes.entrySet()) {
+            remainingRanges.put(entry.getKey(), entry.getValue().without(removed));
+        }
+        // Every removed ordinal belongs to the deleted ID, so the other IDs only move down.
+        Map<String, Integer> remainingOrdinals = new HashMap<>(ordinalsById);
+        remainingOrdinals.remove(productId);
+        int[] removedOrdinals = removed;
+        remainingOrdinals.replaceAll((id, ordinal) -> ordinal - (-Arrays.binarySearch(removedOrdinals, ordinal) - 1));
+        ProductColumns remaining = products.without(removed);
+        return new ProductCatalog(remaining, remainingOrdinals, tokenIndex.without(removed),
+                trigramIndex.without(removed), completionIndex.without(removed, remaining),
+                remainingOrders, remainingRanges, fileLength, fileModified);
+    }
+
+    /**
+     * Returns the number of products in the catalog.
+     *
+     * @return the product count.
+     */
+    int size() {
+        return products.size();
+    }
+
+    /**
+     * Checks whether this snapshot still reflects the given file.
+     *
+     * @param file the products file.
+     * @return true if the file's size and modification time are unchanged since loading.
+     */
+    boolean matches(File file) {
+        return file.length() == fileLength && file.lastModified() == fileModified;
+    }
+}
@@ -0,0 +1,300 @@
+package Operation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.Product;
+
+/**
+ * The {@code ProductColumns} class stores the catalog's products column by column instead of as
+ * one {@link Product} object each.
+ * <p>
+ * Every field is an array indexed by product ordinal: the prices and the discount are
+ * {@code double[]}, the like count is an {@code int[]}, and the category is an {@code int[]} of
+ * codes into a dictionary of the distinct categories. Equal names and models share one string.
+ * This keeps no per-product object on the heap, and aggregations scan the primitive arrays
+ * sequentially. A {@link Product} is created only when a caller asks for one.
+ * </p>
+ * <p>
+ * The columns never change once built; a delete produces new columns with the removed products
+ * taken out. The arrays handed out by the accessors must not be modified.
+ * </p>
+ */
+final class ProductColumns {
+
+    private final String[] ids;
+    private final String[] models;
+    private final String[] names;
+    private final int[] categoryCodes;
+    private final double[] currentPrices;
+    private final double[] rawPrices;
+    private final double[] discounts;
+    private final int[] likes;
+
+    /** Distinct categories in order of first appearance, indexed by category code; may contain null. */
+    private final List<String> categories;
+
+    /** Read-only view of the columns as products. */
+    private final List<Product> view;
+
+    /**
+     * Constructs the columns from finished arrays of equal length.
+     */
+    private ProductColumns(String[] ids, String[] models, String[] names, int[] categoryCodes,
+                           double[] currentPrices, double[] rawPrices, double[] discounts, int[] likes,
+                           List<String> categories) {
+        this.ids = ids;
+        this.models = models;
+        this.names = names;
+        this.categoryCodes = categoryCodes;
+        this.currentPrices = currentPrices;
+        this.rawPrices = rawPrices;
+        this.discounts = discounts;
+        this.likes = likes;
+        this.categories = Collections.unmodifiableList(categories);
+        this.view = new AbstractList<Product>() {
+            @Override
+            public Product get(int ordinal) {
+                return product(ordinal);
+            }
+
+            @Override
+            public int size() {
+                return ProductColumns.this.ids.length;
+            }
+        };
+    }
+
+    /**
+     * The {@code Builder} class collects products one at a time, so that a catalog can be loaded
+     * without holding every decoded {@link Product} at once.
+     */
+    static final class Builder {
+        private String[] ids = new String[16];
+        private String[] models = new String[16];
+        private String[] names = new String[16];
+        private int[] categoryCodes = new int[16];
+        private double[] currentPrices = new double[16];
+        private double[] rawPrices = new double[16];
+        private double[] discounts = new double[16];
+        private int[] likes = new int[16];
+        private int size;
+        private final List<String> categories = new ArrayList<>();
+        private final Map<String, Integer> categoryCodeByName = new HashMap<>();
+        private final Map<String, String> pool = new HashMap<>();
+
+        /**
+         * Appends a product.
+         *
+         * @param product the product to append; it is not kept.
+         * @return this builder.
+         */
+        Builder add(Product product) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                models = Arrays.copyOf(models, capacity);
+                names = Arrays.copyOf(names, capacity);
+                categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+                currentPrices = Arrays.copyOf(currentPrices, capacity);
+                rawPrices = Arrays.copyOf(rawPrices, capacity);
+                discounts = Arrays.copyOf(discounts, capacity);
+                likes = Arrays.copyOf(likes, capacity);
+            }
+            Integer code = categoryCodeByName.get(product.getProCategory());
+            if (code == null) {
+                code = categories.size();
+                categoryCodeByName.put(product.getProCategory(), code);
+                categories.add(product.getProCategory());
+            }
+            ids[size] = product.getProId();
+            models[size] = intern(product.getProModel());
+            names[size] = intern(product.getProName());
+            categoryCodes[size] = code;
+            currentPrices[size] = product.getProCurrentPrice();
+            rawPrices[size] = product.getProRawPrice();
+            discounts[size] = product.getProDiscount();
+            likes[size] = product.getProLikesCount();
+            size++;
+            return this;
+        }
+
+        /**
+         * Returns the shared copy of a string, so repeated names and models are stored once.
+         */
+        private String intern(String text) {
+            if (text == null) return null;
+            String shared = pool.putIfAbsent(text, text);
+            return shared == null ? text : shared;
+        }
+
+        /**
+         * Returns the columns of the products added so far.
+         *
+         * @return the new columns.
+         */
+        ProductColumns build() {
+            return new ProductColumns(Arrays.copyOf(ids, size), Arrays.copyOf(models, size),
+                    Arrays.copyOf(names, size), Arrays.copyOf(categoryCodes, size),
+                    Arrays.copyOf(currentPrices, size), Arrays.copyOf(rawPrices, size),
+                    Arrays.copyOf(discounts, size), Arrays.copyOf(likes, size), new ArrayList<>(categories));
+        }
+    }
+
+    /**
+     * Builds columns from a list of products.
+     *
+     * @param products the products, in catalog order.
+     * @return the new columns.
+     */
+    static ProductColumns of(List<Product> products) {
+        Builder builder = new Builder();
+        for (Product product : products) {
+            builder.add(product);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of products.
+     *
+     * @return the product count.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Creates the product at an ordinal.
+     *
+     * @param ordinal the product's position.
+     * @return a new {@link Product} with the stored values.
+     */
+    Product product(int ordinal) {
+        return new Product(ids[ordinal], models[ordinal], categories.get(categoryCodes[ordinal]), names[ordinal],
+                currentPrices[ordinal], rawPrices[ordinal], discounts[ordinal], likes[ordinal]);
+    }
+
+    /**
+     * Returns the products as a read-only list that creates each product when it is read.
+     *
+     * @return the list view.
+     */
+    List<Product> asList() {
+        return view;
+    }
+
+    /** Returns the ID of a product. */
+    String id(int ordinal) {
+        return ids[ordinal];
+    }
+
+    /** Returns the model of a product. */
+    String model(int ordinal) {
+        return models[ordinal];
+    }
+
+    /** Returns the name of a product. */
+    String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    /** Returns the category of a product. */
+    String category(int ordinal) {
+        return categories.get(categoryCodes[ordinal]);
+    }
+
+    /** Returns the category code of every product. */
+    int[] categoryCodes() {
+        return categoryCodes;
+    }
+
+    /** Returns the distinct categories, indexed by category code. */
+    List<String> categories() {
+        return categories;
+    }
+
+    /** Returns the current price of every product. */
+    double[] currentPrices() {
+        return currentPrices;
+    }
+
+    /** Returns the raw price of every product. */
+    double[] rawPrices() {
+        return rawPrices;
+    }
+
+    /** Returns the discount of every product. */
+    double[] discounts() {
+        return discounts;
+    }
+
+    /** Returns the like count of every product. */
+    int[] likes() {
+        return likes;
+    }
+
+    /**
+     * Sums the like counts per category.
+     *
+     * @return the total likes of each category that has products, in order of first appearance.
+     */
+    Map<String, Integer> likesByCategory() {
+        int[] totals = new int[categories.size()];
+        boolean[] present = new boolean[categories.size()];
+        for (int ordinal = 0; ordinal < likes.length; ordinal++) {
+            totals[categoryCodes[ordinal]] += likes[ordinal];
+            present[categoryCodes[ordinal]] = true;
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 0; code < totals.length; code++) {
+            if (present[code]) {
+                result.put(categories.get(code), totals[code]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the columns with some products removed. The category dictionary is kept
+     * as it is.
+     *
+     * @param removed the ordinals of the removed products, in ascending order.
+     * @return the new columns.
+     */
+    ProductColumns without(int[] removed) {
+        if (removed.length == 0) {
+            return this;
+        }
+        int size = ids.length - removed.length;
+        String[] keptIds = new String[size];
+        String[] keptModels = new String[size];
+        String[] keptNames = new String[size];
+        int[] keptCodes = new int[size];
+        double[] keptCurrent = new double[size];
+        double[] keptRaw = new double[size];
+        double[] keptDiscounts = new double[size];
+        int[] keptLikes = new int[size];
+        int next = 0;
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+            if (Arrays.binarySearch(removed, ordinal) >= 0) continue;
+            keptIds[next] = ids[ordinal];
+            keptModels[next] = models[ordinal];
+            keptNames[next] = names[ordinal];
+            keptCodes[next] = categoryCodes[ordinal];
+            keptCurrent[next] = currentPrices[ordinal];
+            keptRaw[next] = rawPrices[ordinal];
+            keptDiscounts[next] = discounts[ordinal];
+            keptLikes[next] = likes[ordinal];
+            next++;
+        }
+        return new ProductColumns(keptIds, keptModels, keptNames, keptCodes, keptCurrent, keptRaw, keptDiscounts,
+                keptLikes, new ArrayList<>(categories));
+    }
+}
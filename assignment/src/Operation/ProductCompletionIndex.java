@@ -0,0 +1,248 @@
+package Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code ProductCompletionIndex} class completes a typed prefix to product names and models,
+ * most liked first.
+ * <p>
+ * Every distinct name and model, compared without case, is one term, ranked by the highest like
+ * count among the products that carry it. The lower-cased terms are kept in a sorted array, so
+ * the terms starting with a prefix form one contiguous range that two binary searches find. A
+ * segment tree over the like counts gives the most liked term of any range in logarithmic time,
+ * and the top results are taken by repeatedly splitting the range around its best term, so a
+ * completion costs O(k log n) however many terms share the prefix.
+ * </p>
+ * <p>
+ * Each term also keeps the ordinals of the products that carry it. A delete produces a new index
+ * from these without reading every product again: only the terms of the removed products are
+ * ranked again, over the products that still carry them.
+ * </p>
+ */
+final class ProductCompletionIndex {
+
+    /** The lower-cased terms in ascending order. */
+    private final String[] keys;
+
+    /** The term to show for each key: the spelling used by its most liked product. */
+    private final String[] terms;
+
+    /** The like count each term is ranked by. */
+    private final int[] likes;
+
+    /** For each term, the ascending ordinals of the products whose name or model it is. */
+    private final int[][] carriers;
+
+    /** Iterative segment tree of the best term index; leaves start at {@code keys.length}. */
+    private final int[] best;
+
+    /**
+     * Constructs an index over sorted terms.
+     */
+    private ProductCompletionIndex(String[] keys, String[] terms, int[] likes, int[][] carriers) {
+        this.keys = keys;
+        this.terms = terms;
+        this.likes = likes;
+        this.carriers = carriers;
+        int n = keys.length;
+        this.best = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            best[n + i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            best[i] = better(best[2 * i], best[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Builds an index over the names and models of the given products.
+     *
+     * @param products the catalog's product columns.
+     * @return the new index.
+     */
+    static ProductCompletionIndex build(ProductColumns products) {
+        Map<String, Integer> entries = new HashMap<>();
+        List<String> spellings = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<int[]> ordinals = new ArrayList<>();
+        List<Integer> ordinalCounts = new ArrayList<>();
+        int[] productLikes = products.likes();
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            for (String text : new String[] {products.name(ordinal), products.model(ordinal)}) {
+                if (text == null || text.trim().isEmpty()) continue;
+                String key = text.toLowerCase();
+                Integer entry = entries.get(key);
+                if (entry == null) {
+                    entry = spellings.size();
+                    entries.put(key, entry);
+                    spellings.add(text);
+                    counts.add(productLikes[ordinal]);
+                    ordinals.add(new int[2]);
+                    ordinalCounts.add(0);
+                } else if (productLikes[ordinal] > counts.get(entry)) {
+                    spellings.set(entry, text);
+                    counts.set(entry, productLikes[ordinal]);
+                }
+                // A product whose name and model are the same term is listed once.
+                int[] carrying = ordinals.get(entry);
+                int count = ordinalCounts.get(entry);
+                if (count == 0 || carrying[count - 1] != ordinal) {
+                    if (count == carrying.length) {
+                        carrying = Arrays.copyOf(carrying, count * 2);
+                        ordinals.set(entry, carrying);
+                    }
+                    carrying[count] = ordinal;
+                    ordinalCounts.set(entry, count + 1);
+                }
+            }
+        }
+        String[] keys = entries.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        String[] terms = new String[keys.length];
+        int[] likes = new int[keys.length];
+        int[][] carriers = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            int entry = entries.get(keys[i]);
+            terms[i] = spellings.get(entry);
+            likes[i] = counts.get(entry);
+            carriers[i] = Arrays.copyOf(ordinals.get(entry), ordinalCounts.get(entry));
+        }
+        return new ProductCompletionIndex(keys, terms, likes, carriers);
+    }
+
+    /**
+     * Returns a copy of this index with some products removed, shifting later ordinals down.
+     * <p>
+     * Terms that no remaining product carries are dropped. A term that lost a product is ranked
+     * again over the products that still carry it, in the same way {@link #build} ranks it; every
+     * other term keeps its spelling and like count.
+     * </p>
+     *
+     * @param removed   the ordinals of the removed products, in ascending order.
+     * @param remaining the product columns with those products taken out.
+     * @return the new index.
+     */
+    ProductCompletionIndex without(int[] removed, ProductColumns remaining) {
+        if (removed.length == 0) {
+            return this;
+        }
+        int[] productLikes = remaining.likes();
+        String[] keptKeys = new String[keys.length];
+        String[] keptTerms = new String[keys.length];
+        int[] keptLikes = new int[keys.length];
+        int[][] keptCarriers = new int[keys.length][];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int[] carrying = Postings.without(carriers[i], removed);
+            if (carrying.length == 0) {
+                continue;
+            }
+            String term = terms[i];
+            int like = likes[i];
+            if (carrying.length < carriers[i].length) {
+                term = null;
+                for (int ordinal : carrying) {
+                    for (String text : new String[] {remaining.name(ordinal), remaining.model(ordinal)}) {
+                        if (text == null || !keys[i].equals(text.toLowerCase())) continue;
+                        if (term == null || productLikes[ordinal] > like) {
+                            term = text;
+                            like = productLikes[ordinal];
+                        }
+                    }
+                }
+            }
+            keptKeys[count] = keys[i];
+            keptTerms[count] = term;
+            keptLikes[count] = like;
+            keptCarriers[count++] = carrying;
+        }
+        return new ProductCompletionIndex(Arrays.copyOf(keptKeys, count), Arrays.copyOf(keptTerms, count),
+                Arrays.copyOf(keptLikes, count), Arrays.copyOf(keptCarriers, count));
+    }
+
+    /**
+     * Returns the most liked terms that start with the prefix, ignoring case.
+     *
+     * @param prefix the typed text.
+     * @param limit  the maximum number of completions.
+     * @return up to {@code limit} terms, most liked first; ties in alphabetical order.
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> completions = new ArrayList<>(Math.max(0, Math.min(limit, keys.length)));
+        String key = prefix.toLowerCase();
+        int from = firstIndex(key, false);
+        int to = firstIndex(key, true) - 1;
+        if (limit <= 0 || from > to) {
+            return completions;
+        }
+        // Each entry is {best term, range start, range end}; the best of all open ranges comes first.
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) ->
+                likes[a[0]] != likes[b[0]] ? Integer.compare(likes[b[0]], likes[a[0]]) : Integer.compare(a[0], b[0]));
+        ranges.add(new int[] {query(from, to), from, to});
+        while (!ranges.isEmpty() && completions.size() < limit) {
+            int[] range = ranges.poll();
+            int top = range[0];
+            completions.add(terms[top]);
+            if (range[1] < top) {
+                ranges.add(new int[] {query(range[1], top - 1), range[1], top - 1});
+            }
+            if (top < range[2]) {
+                ranges.add(new int[] {query(top + 1, range[2]), top + 1, range[2]});
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Binary search for the first key that is not below the prefix, or, with {@code past} set,
+     * the first key that is also not a completion of it.
+     */
+    private int firstIndex(String prefix, boolean past) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            boolean before = keys[mid].compareTo(prefix) < 0 || (past && keys[mid].startsWith(prefix));
+            if (before) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the best term between two indexes, both inclusive.
+     */
+    private int query(int from, int to) {
+        int n = keys.length;
+        int result = -1;
+        for (int l = from + n, r = to + n + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                result = result < 0 ? best[l] : better(result, best[l]);
+                l++;
+            }
+            if ((r & 1) == 1) {
+                r--;
+                result = result < 0 ? best[r] : better(result, best[r]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Picks the more liked of two terms, or the alphabetically first on a tie.
+     */
+    private int better(int a, int b) {
+        if (likes[a] != likes[b]) {
+            return likes[a] > likes[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+}
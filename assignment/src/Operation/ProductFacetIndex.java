@@ -0,0 +1,229 @@
+package Operation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ProductFacetIndex} class filters the catalog's products by category, price bucket,
+ * discount bucket and like count, and counts the matches per category and bucket.
+ * <p>
+ * Every category and every bucket has a bitmap over the product ordinals. A filter combines the
+ * bitmaps of the chosen values with word-wide AND operations, then walks the remaining bits once,
+ * dropping products under the like threshold and counting each match towards its category and
+ * buckets. The discount buckets are those of the discount chart.
+ * </p>
+ */
+final class ProductFacetIndex {
+
+    /** Price bucket labels, in ascending order of price. */
+    static final String[] PRICE_BUCKETS = {
+            "Price < 200", "200 <= Price < 500", "500 <= Price < 1000", "Price >= 1000"};
+
+    /** Discount bucket labels, in ascending order of discount. */
+    static final String[] DISCOUNT_BUCKETS = {"Discount < 30", "30 <= Discount <= 60", "Discount > 60"};
+
+    /**
+     * The products left by a filter, with the number of them in each category and bucket.
+     */
+    static final class Selection {
+        /** Ordinals of the matching products, ascending. */
+        final int[] ordinals;
+        /** Matches per category that has any, in order of first appearance in the catalog. */
+        final Map<String, Integer> categoryCounts;
+        /** Matches per price bucket, in bucket order. */
+        final Map<String, Integer> priceCounts;
+        /** Matches per discount bucket, in bucket order. */
+        final Map<String, Integer> discountCounts;
+
+        private Selection(int[] ordinals, Map<String, Integer> categoryCounts, Map<String, Integer> priceCounts,
+                          Map<String, Integer> discountCounts) {
+            this.ordinals = ordinals;
+            this.categoryCounts = categoryCounts;
+            this.priceCounts = priceCounts;
+            this.discountCounts = discountCounts;
+        }
+    }
+
+    /** Distinct categories, in order of first appearance; may contain null. */
+    private final List<String> categories;
+
+    /** Category number of every product by ordinal. */
+    private final int[] categoryOf;
+
+    /** Price bucket of every product by ordinal. */
+    private final int[] priceBucketOf;
+
+    /** Discount bucket of every product by ordinal. */
+    private final int[] discountBucketOf;
+
+    /** Like count of every product by ordinal. */
+    private final int[] likes;
+
+    /** Products of each category, by category number. */
+    private final BitSet[] categoryBits;
+
+    /** Products of each price bucket. */
+    private final BitSet[] priceBits;
+
+    /** Products of each discount bucket. */
+    private final BitSet[] discountBits;
+
+    /**
+     * Constructs an index from the per-product values and builds the bitmaps.
+     */
+    private ProductFacetIndex(List<String> categories, int[] categoryOf, int[] priceBucketOf,
+                              int[] discountBucketOf, int[] likes) {
+        this.categories = categories;
+        this.categoryOf = categoryOf;
+        this.priceBucketOf = priceBucketOf;
+        this.discountBucketOf = discountBucketOf;
+        this.likes = likes;
+        this.categoryBits = bitmaps(categoryOf, categories.size());
+        this.priceBits = bitmaps(priceBucketOf, PRICE_BUCKETS.length);
+        this.discountBits = bitmaps(discountBucketOf, DISCOUNT_BUCKETS.length);
+    }
+
+    /**
+     * Builds an index over the given products.
+     *
+     * @param products the catalog's product columns.
+     * @return the new index.
+     */
+    static ProductFacetIndex build(ProductColumns products) {
+        double[] prices = products.currentPrices();
+        double[] discounts = products.discounts();
+        int[] priceBucketOf = new int[prices.length];
+        int[] discountBucketOf = new int[discounts.length];
+        for (int ordinal = 0; ordinal < prices.length; ordinal++) {
+            priceBucketOf[ordinal] = priceBucket(prices[ordinal]);
+            discountBucketOf[ordinal] = discountBucket(discounts[ordinal]);
+        }
+        // The category codes and like counts are shared with the columns, which never change.
+        return new ProductFacetIndex(products.categories(), products.categoryCodes(), priceBucketOf,
+                discountBucketOf, products.likes());
+    }
+
+    /**
+     * Returns the index of the price bucket a price falls in.
+     */
+    private static int priceBucket(double price) {
+        if (price < 200) return 0;
+        if (price < 500) return 1;
+        if (price < 1000) return 2;
+        return 3;
+    }
+
+    /**
+     * Returns the index of the discount bucket a discount falls in.
+     */
+    private static int discountBucket(double discount) {
+        if (discount < 30) return 0;
+        if (discount <= 60) return 1;
+        return 2;
+    }
+
+    /**
+     * Sets one bitmap per value, with a bit for every ordinal that has that value.
+     */
+    private static BitSet[] bitmaps(int[] valueOf, int valueCount) {
+        BitSet[] bitmaps = new BitSet[valueCount];
+        for (int value = 0; value < valueCount; value++) {
+            bitmaps[value] = new BitSet(valueOf.length);
+        }
+        for (int ordinal = 0; ordinal < valueOf.length; ordinal++) {
+            bitmaps[valueOf[ordinal]].set(ordinal);
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Filters the products and counts the matches per category and bucket.
+     *
+     * @param category       the category to keep, compared without case, or null for every category.
+     * @param priceBucket    a label from {@link #PRICE_BUCKETS}, or null for every price.
+     * @param discountBucket a label from {@link #DISCOUNT_BUCKETS}, or null for every discount.
+     * @param minLikes       the smallest like count to keep.
+     * @return the matching products and their counts; nothing matches an unknown category or label.
+     */
+    Selection filter(String category, String priceBucket, String discountBucket, int minLikes) {
+        BitSet matches = new BitSet(likes.length);
+        matches.set(0, likes.length);
+        if (category != null) {
+            // Categories that differ only in case are one category to the filter.
+            BitSet inCategory = null;
+            for (int number = 0; number < categories.size(); number++) {
+                if (category.equalsIgnoreCase(categories.get(number))) {
+                    if (inCategory == null) {
+                        inCategory = (BitSet) categoryBits[number].clone();
+                    } else {
+                        inCategory.or(categoryBits[number]);
+                    }
+                }
+            }
+            and(matches, inCategory);
+        }
+        if (priceBucket != null) {
+            int bucket = Arrays.asList(PRICE_BUCKETS).indexOf(priceBucket);
+            and(matches, bucket < 0 ? null : priceBits[bucket]);
+        }
+        if (discountBucket != null) {
+            int bucket = Arrays.asList(DISCOUNT_BUCKETS).indexOf(discountBucket);
+            and(matches, bucket < 0 ? null : discountBits[bucket]);
+        }
+
+        // One pass over the remaining products applies the like threshold and counts the facets.
+        int[] ordinals = new int[matches.cardinality()];
+        int count = 0;
+        int[] categoryCounts = new int[categories.size()];
+        int[] priceCounts = new int[PRICE_BUCKETS.length];
+        int[] discountCounts = new int[DISCOUNT_BUCKETS.length];
+        for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+            if (likes[ordinal] < minLikes) continue;
+            ordinals[count++] = ordinal;
+            categoryCounts[categoryOf[ordinal]]++;
+            priceCounts[priceBucketOf[ordinal]]++;
+            discountCounts[discountBucketOf[ordinal]]++;
+        }
+        return new Selection(Arrays.copyOf(ordinals, count),
+                labelCounts(categories.toArray(new String[0]), categoryCounts, false),
+                labelCounts(PRICE_BUCKETS, priceCounts, true),
+                labelCounts(DISCOUNT_BUCKETS, discountCounts, true));
+    }
+
+    /**
+     * Counts every product per category and bucket, with no filter applied.
+     *
+     * @return all products and their counts.
+     */
+    Selection counts() {
+        return filter(null, null, null, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Narrows the matches to a bitmap, or to nothing when there is no bitmap.
+     */
+    private static void and(BitSet matches, BitSet bitmap) {
+        if (bitmap == null) {
+            matches.clear();
+        } else {
+            matches.and(bitmap);
+        }
+    }
+
+    /**
+     * Pairs labels with their counts, keeping the label order and, unless asked, leaving out
+     * labels that count zero.
+     */
+    private static Map<String, Integer> labelCounts(String[] labels, int[] counts, boolean keepZero) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            if (keepZero || counts[i] > 0) {
+                result.put(labels[i], counts[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -13,16 +13,14 @@ import javafx.scene.chart.ScatterChart;
 import javafx.scene.image.WritableImage;
 import javax.imageio.ImageIO;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.concurrent.locks.Lock;
 import org.json.simple.parser.ParseException;
 
 import Model.Product;
@@ -39,16 +37,24 @@ import Model.Product;
 public class ProductOperation {
 
     /** Singleton instance of ProductOperation. */
-    private static ProductOperation instance;
+    private static volatile ProductOperation instance;
 
-    /** JSON parser used for parsing product data from the file. */
-    private JSONParser parser;
+    /** Path of the products data file. */
+    private static final String PRODUCTS_FILE = RecordFile.DATA_DIRECTORY + "/products.txt";
+
+    /** Path of the sidecar file holding the persisted token index. */
+    private static final String TOKEN_INDEX_FILE = RecordFile.DATA_DIRECTORY + "/products.tokens.idx";
+
+    /** Resident snapshot of the products file, loaded on first use; swapped whole, never changed in place. */
+    private volatile ProductCatalog catalog;
+
+    /** Whether the resident catalog's token index has changed since its sidecar file was written. */
+    private volatile boolean tokenIndexUnsaved;
 
     /**
-     * Private constructor to initialize the JSON parser.
+     * Private constructor to enforce the singleton pattern.
     */
     private ProductOperation() {
-        parser = new JSONParser();
     }
 
     /**
@@ -58,8 +64,12 @@ public class ProductOperation {
     * @return the singleton instance of ProductOperation.
     */
     public static ProductOperation getInstance() {
-        if (instance == null) { 
-            instance = new ProductOperation();
+        if (instance == null) {
+            synchronized (ProductOperation.class) {
+                if (instance == null) {
+                    instance = new ProductOperation();
+                }
+            }
         }
         return instance;
     }
@@ -67,227 +77,424 @@ public class ProductOperation {
     /**
      * Extracts sample product details and writes them to the products file.
     * <p>
-    * This method creates a sample product record, converts it into a JSON string,
+    * This method creates a sample product record, encodes it as a JSON string,
     * and writes it to "assignment/data/products.txt". The file is overwritten each time.
     * </p>
     */
     public void extractProductsFromFiles() {
-        try (FileWriter writer = new FileWriter("assignment/data/products.txt", false)) {
-        // Create a map containing sample product details.
-        HashMap<String, Object> product1Details = new HashMap<String, Object>();
-        product1Details.put("pro_id", "p_0001");
-        product1Details.put("pro_model", "ModelX");
-        product1Details.put("pro_category", "Electronics");
-        product1Details.put("pro_name", "Smartphone");
-        product1Details.put("pro_current_price", 699.99);
-        product1Details.put("pro_raw_price", 899.99);
-        product1Details.put("pro_discount", 20.0);
-        product1Details.put("pro_likes_count", 150);
-
-        // Convert the product details to a JSON object.
-        JSONObject product1DetailsJSON = new JSONObject(product1Details);
-        // Write the JSON string to the file, followed by a line separator.
-        writer.write(product1DetailsJSON.toJSONString() + System.lineSeparator());
-
-        System.out.println("Sample products extracted successfully.");
+        // Create the sample product.
+        Product product1 = new Product("p_0001", "ModelX", "Electronics", "Smartphone",
+                                       699.99, 899.99, 20.0, 150);
+        try {
+            // Write the JSON string to the file, followed by a line separator. The file is replaced
+            // in one step, so it is never left empty or half-written.
+            RecordFile.PRODUCTS.replace(out -> out.write(
+                    (RecordCodec.encodeProduct(product1) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+            System.out.println("Sample products extracted successfully.");
         } catch (IOException e) {
             System.err.println("Error writing to products file: " + e.getMessage());
+        } finally {
+            invalidateCatalog();
         }
     }
 
     /**
-     * Retrieves a paginated list of products from the products file.
-    * <p>
-    * This method reads all lines from "assignment/data/products.txt", parses each line as a JSON object
-    * to create {@code Product} instances, and then paginates the results to return 10 products per page.
-    * </p>
-    *
-    * @param pageNumber the page number to retrieve.
-    * @return a {@code ProductListResult} encapsulating the products for the requested page,
-    *         the current page number, and the total page count.
-    */
-    public ProductListResult getProductList(int pageNumber) {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/products.txt");
+     * Returns the resident product catalog, reloading it from "assignment/data/products.txt"
+     * when the file's size or modification time differs from the loaded snapshot.
+     *
+     * @return the current {@link ProductCatalog}.
+     */
+    private ProductCatalog getCatalog() {
+        File file = new File(PRODUCTS_FILE);
+        ProductCatalog current = catalog;
+        if (current == null || !current.matches(file)) {
+            current = loadCatalog(file);
+            catalog = current;
+        }
+        return current;
+    }
+
+    /**
+     * Discards the resident catalog so that the next read reloads it from the products file.
+     */
+    public void invalidateCatalog() {
+        catalog = null;
+    }
 
-        // Read all lines from the products file.
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                lines.add(scanner.nextLine().trim());
+    /**
+     * Writes the token index of the resident catalog to its sidecar file if deletes have changed
+     * it since it was last written and the catalog still describes the products file. Called
+     * on shutdown, so the next run can load the index instead of rebuilding it.
+     */
+    public void saveTokenIndex() {
+        Lock lock = RecordFile.PRODUCTS.readLock();
+        lock.lock();
+        try {
+            File file = new File(PRODUCTS_FILE);
+            ProductCatalog current = catalog;
+            if (tokenIndexUnsaved && current != null && current.matches(file)) {
+                current.getTokenIndex().save(new File(TOKEN_INDEX_FILE), file.length(), file.lastModified());
             }
-        } catch (IOException e) {
-            System.err.println("Error reading products file: " + e.getMessage());
+            tokenIndexUnsaved = false;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     * Reads every product record from the products file into a new catalog snapshot.
+     * <p>
+     * Records are decoded straight from the bytes of the file while holding its read lock, so
+     * the captured file size and modification time describe exactly the records read. The token
+     * index is taken from its sidecar file when that still describes the products file, and is
+     * otherwise built from the products and saved.
+     * </p>
+     *
+     * @param file the products file.
+     * @return a {@link ProductCatalog} holding all parsed products.
+     */
+    private ProductCatalog loadCatalog(File file) {
+        Lock lock = RecordFile.PRODUCTS.readLock();
+        lock.lock();
+        try {
+            long fileLength = file.length();
+            long fileModified = file.lastModified();
+            ProductColumns.Builder builder = new ProductColumns.Builder();
+            boolean complete = true;
 
-        // Convert each non-empty line into a Product instance.
-        List<Product> allProducts = new ArrayList<>();
-        for (String line : lines) {
-            if (line.isEmpty()) continue;
             try {
-                JSONObject json = (JSONObject) parser.parse(line);
-                String proId = (String) json.get("pro_id");
-                String proModel = (String) json.get("pro_model");
-                String proCategory = (String) json.get("pro_category");
-                String proName = (String) json.get("pro_name");
-                double proCurrentPrice = Double.parseDouble(json.get("pro_current_price").toString());
-                double proRawPrice = Double.parseDouble(json.get("pro_raw_price").toString());
-                double proDiscount = Double.parseDouble(json.get("pro_discount").toString());
-                int proLikesCount = Integer.parseInt(json.get("pro_likes_count").toString());
-
-                Product product = new Product(proId, proModel, proCategory, proName, proCurrentPrice, proRawPrice, proDiscount, proLikesCount);
-
-                allProducts.add(product);
-
-            } catch (ParseException pe) {
-                System.err.println("Error parsing product JSON: " + pe.getMessage());
-            } catch (NumberFormatException nfe) {
-                System.err.println("Error converting numerical values: " + nfe.getMessage());
+                RecordFile.PRODUCTS.scanRaw(0, (offset, buffer, length) -> {
+                    try {
+                        builder.add(RecordCodec.decodeProduct(buffer, 0, length));
+                    } catch (ParseException pe) {
+                        System.err.println("Error parsing product JSON: " + pe.getMessage());
+                    } catch (NumberFormatException nfe) {
+                        System.err.println("Error converting numerical values: " + nfe.getMessage());
+                    }
+                    return true;
+                });
+            } catch (IOException e) {
+                System.err.println("Error reading products file: " + e.getMessage());
+                complete = false;
             }
+
+            ProductColumns products = builder.build();
+            File tokenFile = new File(TOKEN_INDEX_FILE);
+            ProductTokenIndex tokenIndex = ProductTokenIndex.load(tokenFile, fileLength, fileModified, products.size());
+            if (tokenIndex == null) {
+                tokenIndex = ProductTokenIndex.build(products);
+                if (complete) {
+                    tokenIndex.save(tokenFile, fileLength, fileModified);
+                }
+            }
+            return new ProductCatalog(products, tokenIndex, fileLength, fileModified);
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     * Parses a single product record.
+     *
+     * @param line a JSON-formatted product record.
+     * @return the corresponding {@link Model.Product}.
+     * @throws ParseException        if the line is not valid JSON.
+     * @throws NumberFormatException if a numerical field cannot be converted.
+     */
+    private Product parseProduct(String line) throws ParseException {
+        return RecordCodec.decodeProduct(line);
+    }
 
-        // Calculate pagination details.
-        int totalProducts = allProducts.size();
-        int totalPages = (int) Math.ceil((double) totalProducts / 10);
+    /**
+     * Retrieves a paginated list of products from the resident catalog.
+     * <p>
+     * Products are served from memory in file order and paginated to return 10 products per page.
+     * The catalog is reloaded only if "assignment/data/products.txt" has changed since it was loaded.
+     * </p>
+     *
+     * @param pageNumber the page number to retrieve.
+     * @return a {@code ProductListResult} encapsulating the products for the requested page,
+     *         the current page number, and the total page count.
+     */
+    public ProductListResult getProductList(int pageNumber) {
+        return getProductList(pageNumber, null);
+    }
+
+    /**
+     * Retrieves a paginated list of products from the resident catalog in a sort order.
+     * <p>
+     * The sort key is "pro_current_price" for cheapest first, "pro_discount" for highest discount
+     * first, "pro_likes_count" for most liked first or "pro_name" for alphabetical by name;
+     * products that rank equal keep their file order. Each order is sorted once per catalog and
+     * kept, so later pages cost only the 10 products they show. Deleting a product updates the
+     * kept orders without sorting again.
+     * </p>
+     *
+     * @param pageNumber the page number to retrieve.
+     * @param sortKey    the field to sort by, or null for file order.
+     * @return a {@code ProductListResult} encapsulating the products for the requested page,
+     *         the current page number, and the total page count.
+     */
+    public ProductListResult getProductList(int pageNumber, String sortKey) {
+        if (sortKey != null && !ProductRanking.isSortKey(sortKey)) {
+            System.err.println("Error sorting products: unknown sort key " + sortKey);
+            sortKey = null;
+        }
+        ProductCatalog current = getCatalog();
+        int totalProducts = current.size();
+        int[] bounds = pageBounds(pageNumber, totalProducts);
+        List<Product> products = sortKey == null
+                ? new ArrayList<>(current.getProducts().subList(bounds[1], bounds[2]))
+                : current.sortedRange(sortKey, bounds[1], bounds[2]);
+
+        return new ProductListResult(products, bounds[0], totalPages(totalProducts));
+    }
+
+    /**
+     * Retrieves a paginated list of the products whose price or discount lies within a range.
+     * <p>
+     * The field is "pro_current_price", "pro_raw_price" or "pro_discount", and both bounds are
+     * inclusive: use {@link Double#NEGATIVE_INFINITY} or {@link Double#POSITIVE_INFINITY} for an
+     * open end and {@link Math#nextUp(double)} or {@link Math#nextDown(double)} for a strict bound,
+     * so "discount &gt; 60" is {@code Math.nextUp(60.0)} to infinity. The matches are listed by
+     * ascending value, 10 per page. They are found by binary search in a sorted copy of the
+     * field's values kept by the resident catalog, so no product outside the range is looked at
+     * unless a category is given.
+     * </p>
+     *
+     * @param field      the field to filter on.
+     * @param min        the smallest value accepted.
+     * @param max        the largest value accepted.
+     * @param category   the category to keep, ignoring case, or null for every category.
+     * @param pageNumber the page number to retrieve.
+     * @return a {@code ProductListResult} with the requested page of matches, the current page
+     *         number, and the total page count; empty if the field is unknown.
+     */
+    public ProductListResult getProductListInRange(String field, double min, double max, String category,
+                                                   int pageNumber) {
+        ProductCatalog current = getCatalog();
+        int[] matches = current.range(field, min, max, category);
+        if (matches == null) {
+            System.err.println("Error filtering products: unknown field " + field);
+            return new ProductListResult(new ArrayList<>(), 1, 0);
+        }
+        int[] bounds = pageBounds(pageNumber, matches.length);
+        List<Product> products = current.select(Arrays.copyOfRange(matches, bounds[1], bounds[2]));
+
+        return new ProductListResult(products, bounds[0], totalPages(matches.length));
+    }
+
+    /**
+     * Retrieves a paginated list of the products that pass every given filter, with facet counts.
+     * <p>
+     * A product matches when it is in the category, compared without case as in
+     * {@link #getProductListInRange}, its current price is in the price bucket
+     * ("Price &lt; 200", "200 &lt;= Price &lt; 500", "500 &lt;= Price &lt; 1000" or
+     * "Price &gt;= 1000"), its discount is in the discount bucket ("Discount &lt; 30",
+     * "30 &lt;= Discount &lt;= 60" or "Discount &gt; 60", as in the discount chart) and it has at
+     * least {@code minLikes} likes; a null filter accepts everything. Besides the requested page
+     * of matches in file order, the result counts all matches per category, price bucket and
+     * discount bucket. The filters are evaluated on bitmaps kept by the resident catalog, and the
+     * counts are taken in the same pass that lists the matches.
+     * </p>
+     *
+     * @param category       the category to keep, compared without case, or null for every category.
+     * @param priceBucket    the price bucket to keep, or null for every price.
+     * @param discountBucket the discount bucket to keep, or null for every discount.
+     * @param minLikes       the smallest like count to keep.
+     * @param pageNumber     the page number to retrieve.
+     * @return a {@code ProductFilterResult} with the requested page of matches, the current page
+     *         number, the total page count and the facet counts.
+     */
+    public ProductFilterResult filterProducts(String category, String priceBucket, String discountBucket,
+                                              int minLikes, int pageNumber) {
+        ProductCatalog current = getCatalog();
+        ProductFacetIndex.Selection selection = current.filter(category, priceBucket, discountBucket, minLikes);
+        int[] bounds = pageBounds(pageNumber, selection.ordinals.length);
+        List<Product> products = current.select(Arrays.copyOfRange(selection.ordinals, bounds[1], bounds[2]));
+
+        return new ProductFilterResult(products, bounds[0], totalPages(selection.ordinals.length),
+                selection.categoryCounts, selection.priceCounts, selection.discountCounts);
+    }
+
+    /**
+     * Returns the number of 10-product pages needed for a number of products.
+     */
+    private static int totalPages(int totalProducts) {
+        return (int) Math.ceil((double) totalProducts / 10);
+    }
+
+    /**
+     * Clamps a page number to the available pages.
+     *
+     * @return the clamped page number and the first and last (exclusive) positions on that page.
+     */
+    private static int[] pageBounds(int pageNumber, int totalProducts) {
+        int totalPages = totalPages(totalProducts);
         if (pageNumber < 1) pageNumber = 1;
-        else if (pageNumber > totalPages) pageNumber = totalPages;
+        else if (pageNumber > totalPages) pageNumber = Math.max(1, totalPages);
         int start = (pageNumber - 1) * 10;
         int end = Math.min(start + 10, totalProducts);
-        List<Product> products = allProducts.subList(start, end);
-
-        return new ProductListResult(products, pageNumber, totalPages);
+        return new int[] {pageNumber, start, end};
     }
 
     /**
      * Deletes a product with the specified product ID from the products file.
      * <p>
-     * The method reads all records from "assignment/data/products.txt", skips the record
-     * matching the given product ID, and writes the remaining records back to the file.
+     * A tombstone for the product ID is appended to "assignment/data/products.txt" instead of
+     * rewriting the file; every record with that ID stops being visible and is dropped when the
+     * file is next compacted. If the resident catalog was current, the product is dropped from it
+     * and from its token index; otherwise the catalog is discarded. The token index sidecar is not
+     * written here: it no longer matches the products file, so it is either saved by
+     * {@link #saveTokenIndex()} or rebuilt on the next load.
      * </p>
      *
      * @param productId the ID of the product to delete.
      * @return true if the product was found and deleted; false otherwise.
      */
     public boolean deleteProduct(String productId) {
-        List<String> lines = new ArrayList<>();
-        File file = new File("assignment/data/products.txt");
-        boolean found = false;
-
-        // Read through each line of the file.
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (productId.equals(json.get("pro_id"))) {
-                        found = true; // Skip this record.
-                        continue;
-                    }
-                } catch (ParseException pe) {
-                    // Ignore parse errors here; the line is added as is.
-                }
-                lines.add(line);
+        boolean found;
+        // Hold the write lock so no other change lands between the delete and the catalog update.
+        Lock lock = RecordFile.PRODUCTS.writeLock();
+        lock.lock();
+        try {
+            File file = new File(PRODUCTS_FILE);
+            ProductCatalog current = catalog;
+            boolean wasCurrent = current != null && current.matches(file);
+            found = RecordFile.PRODUCTS.delete(productId);
+            if (found && wasCurrent) {
+                long fileLength = file.length();
+                long fileModified = file.lastModified();
+                catalog = current.without(productId, fileLength, fileModified);
+                tokenIndexUnsaved = true;
+            } else if (found) {
+                invalidateCatalog();
             }
         } catch (IOException e) {
-            System.err.println("Error reading products file: " + e.getMessage());
+            System.err.println("Error writing products file: " + e.getMessage());
+            invalidateCatalog();
             return false;
+        } finally {
+            lock.unlock();
         }
 
         if (!found) {
             System.out.println("Product with id " + productId + " not found.");
             return false;
         }
+        return true;
+    }
 
-        // Write the remaining records back to the file.
-        try (FileWriter writer = new FileWriter("assignment/data/products.txt", false)) {
-            for (String line : lines) {
-                writer.write(line + System.lineSeparator());
-            }
-        } catch (IOException e) {
-            System.err.println("Error writing products file: " + e.getMessage());
-            return false;
-        }
+    /**
+     * Searches products by the words of their name, model and category.
+     * <p>
+     * The query is split into words the same way as the products, ignoring case and punctuation,
+     * and a product matches when it contains every word. The matches are found by intersecting
+     * the token index of the resident catalog rather than scanning the products.
+     * </p>
+     *
+     * @param query the words to search for.
+     * @return the matching products in file order; empty if the query has no words.
+     */
+    public List<Product> searchProducts(String query) {
+        return getCatalog().search(query);
+    }
 
-        return true;
+    /**
+     * Searches products by the words of their name, model and category, tolerating typos.
+     * <p>
+     * Like {@link #searchProducts(String)}, but a query word also matches product words that
+     * differ from it by up to {@code maxDistance} inserted, deleted or replaced characters, so
+     * "Samsnug Galaxy" still finds the Samsung Galaxy products. The distance is limited to 2:
+     * larger distances match too many unrelated words to be useful, and short words are allowed
+     * fewer edits for the same reason. Close words are found by a
+     * pruned walk over the sorted indexed words rather than by comparing the query with every
+     * product.
+     * </p>
+     *
+     * @param query       the words to search for.
+     * @param maxDistance the largest edit distance accepted per word, between 0 and 2.
+     * @return the matching products in file order; empty if the query has no words.
+     */
+    public List<Product> searchProductsFuzzy(String query, int maxDistance) {
+        return getCatalog().fuzzySearch(query, Math.max(0, Math.min(2, maxDistance)));
+    }
+
+    /**
+     * Completes partly typed text to product names and models.
+     * <p>
+     * Completions come from the resident catalog, so no file is read unless the products file has
+     * changed since the catalog was loaded. Names and models starting with the text, ignoring case,
+     * are returned most liked first, ranked by the like count of the most liked product using them.
+     * </p>
+     *
+     * @param prefix the text typed so far.
+     * @param limit  the maximum number of completions.
+     * @return the completions, most liked first.
+     */
+    public List<String> autocomplete(String prefix, int limit) {
+        return getCatalog().complete(prefix, limit);
     }
 
     /**
      * Retrieves a list of products whose names contain the specified keyword.
      * <p>
-     * The method reads each record from "assignment/data/products.txt" (in JSON format) and
-     * filters products based on a case-insensitive search within the product name.
+     * The match is a case-insensitive search within the product name. Candidates are narrowed
+     * with the trigram index of the resident catalog and then checked, so only products that
+     * share every three-letter run with the keyword are looked at.
      * </p>
      *
      * @param keyword the keyword to search for.
      * @return a list of {@code Product} objects matching the keyword.
      */
     public List<Product> getProductListByKeyword(String keyword) {
-        List<Product> matchedProducts = new ArrayList<>();
-        File file = new File("assignment/data/products.txt");
-
-        // Read the file and filter records by the product name.
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-                try {
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    String proName = (String) json.get("pro_name");
-                    if (proName.toLowerCase().contains(keyword.toLowerCase())) {
-                        String proId = (String) json.get("pro_id");
-                        String proModel = (String) json.get("pro_model");
-                        String proCategory = (String) json.get("pro_category");
-                        double proCurrentPrice = Double.parseDouble(json.get("pro_current_price").toString());
-                        double proRawPrice = Double.parseDouble(json.get("pro_raw_price").toString());
-                        double proDiscount = Double.parseDouble(json.get("pro_discount").toString());
-                        int proLikesCount = Integer.parseInt(json.get("pro_likes_count").toString());
-                        
-                        Product product = new Product(proId, proModel, proCategory, proName,
-                                                      proCurrentPrice, proRawPrice, proDiscount, proLikesCount);
-                        matchedProducts.add(product);
-                    }
-                } catch (ParseException | NumberFormatException ex) {
-                    System.err.println("Error processing product record: " + ex.getMessage());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading products file: " + e.getMessage());
+        return getCatalog().searchNames(keyword);
+    }
+
+    /**
+     * Retrieves the best few products whose names contain the specified keyword.
+     * <p>
+     * Matches are found like {@link #getProductListByKeyword(String)} and ranked by the sort key:
+     * "pro_likes_count" puts the most liked first, "pro_discount" the highest discount and
+     * "pro_current_price" the cheapest. Products that rank equal keep their file order. Only the
+     * top {@code limit} matches are kept while ranking, so a keyword matching most of the catalog
+     * does not build and sort a list of every match.
+     * </p>
+     *
+     * @param keyword the keyword to search for.
+     * @param sortKey the field to rank the matches by.
+     * @param limit   the maximum number of products to return.
+     * @return up to {@code limit} matching products, best first; empty if the sort key is unknown.
+     */
+    public List<Product> getTopProductsByKeyword(String keyword, String sortKey, int limit) {
+        if (!ProductRanking.isSortKey(sortKey)) {
+            System.err.println("Error ranking products: unknown sort key " + sortKey);
+            return new ArrayList<>();
         }
-        
-        return matchedProducts;
+        return getCatalog().searchNamesTop(keyword, sortKey, limit);
     }
 
   
     /**
-    * Retrieves a product by its unique identifier from the products file.
+    * Retrieves a product by its unique identifier.
+    * <p>
+    * If the resident catalog is loaded and current, the product is served from memory. Otherwise
+    * the primary-key index of "assignment/data/products.txt" is used to read just that record.
+    * </p>
     *
     * @param productId the unique identifier of the product to retrieve.
     * @return a {@link Model.Product} object matching the given productId, or null if not found.
     */
     public Product getProductById(String productId) {
-        File file = new File("assignment/data/products.txt");
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-                try {
-                    // Parse the JSON record and check for a matching product ID.
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    if (productId.equals(json.get("pro_id"))) {
-                        String proModel = (String) json.get("pro_model");
-                        String proCategory = (String) json.get("pro_category");
-                        String proName = (String) json.get("pro_name");
-                        double proCurrentPrice = Double.parseDouble(json.get("pro_current_price").toString());
-                        double proRawPrice = Double.parseDouble(json.get("pro_raw_price").toString());
-                        double proDiscount = Double.parseDouble(json.get("pro_discount").toString());
-                        int proLikesCount = Integer.parseInt(json.get("pro_likes_count").toString());
-                        // Return the constructed Product instance.
-                        return new Product(productId, proModel, proCategory, proName, 
-                                        proCurrentPrice, proRawPrice, proDiscount, proLikesCount);
-                    }
-                } catch (ParseException pe) {
-                    System.err.println("Error parsing product record: " + pe.getMessage());
-                }
-            }
+        ProductCatalog current = catalog;
+        if (current != null && current.matches(new File(PRODUCTS_FILE))) {
+            return current.getProductById(productId);
+        }
+        try {
+            String line = RecordFile.PRODUCTS.readRecord(productId);
+            return line == null ? null : parseProduct(line.trim());
+        } catch (ParseException | NumberFormatException e) {
+            System.err.println("Error parsing product record: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("Error reading products file: " + e.getMessage());
         }
@@ -296,45 +503,31 @@ public class ProductOperation {
     }
 
     /**
-    * Retrieves all products from the products file.
+     * Returns a lookup table from product ID to product, taken from a single catalog snapshot.
+     * <p>
+     * Analytics code can join many records against the returned map without going back
+     * to {@link #getProductById(String)} for every row.
+     * </p>
+     *
+     * @return an unmodifiable map of product ID to {@link Model.Product}.
+     */
+    public Map<String, Product> getProductLookup() {
+        return getCatalog().getProductLookup();
+    }
+
+    /**
+    * Retrieves the products of the resident catalog as columns.
     *
-    * @return a list of all {@link Model.Product} objects read from "assignment/data/products.txt".
+    * @return the {@link ProductColumns} of the products read from "assignment/data/products.txt".
     */
-    private List<Product> getAllProducts() {
-        List<Product> products = new ArrayList<>();
-        File file = new File("assignment/data/products.txt");
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
-                try {
-                    // Parse the JSON line into a product record.
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    String proId = (String) json.get("pro_id");
-                    String proModel = (String) json.get("pro_model");
-                    String proCategory = (String) json.get("pro_category");
-                    String proName = (String) json.get("pro_name");
-                    double proCurrentPrice = Double.parseDouble(json.get("pro_current_price").toString());
-                    double proRawPrice = Double.parseDouble(json.get("pro_raw_price").toString());
-                    double proDiscount = Double.parseDouble(json.get("pro_discount").toString());
-                    int proLikesCount = Integer.parseInt(json.get("pro_likes_count").toString());
-                    // Create a new Product object and add it to the list.
-                    products.add(new Product(proId, proModel, proCategory, proName, 
-                                            proCurrentPrice, proRawPrice, proDiscount, proLikesCount));
-                } catch (ParseException pe) {
-                    System.err.println("Error parsing product JSON: " + pe.getMessage());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading products file: " + e.getMessage());
-        }
-        return products;
+    private ProductColumns getProductColumns() {
+        return getCatalog().getColumns();
     }
 
     /**
     * Generates a bar chart that shows the number of products per category.
     * <p>
-    * The method reads all product records, counts products in each category, creates a JavaFX 
+    * The method counts products in each category with {@link #filterProducts}'s facet counts, creates a JavaFX 
     * BarChart with the results, takes a snapshot of the chart, and saves the image to 
     * "assignment/data/figure/category_chart.png".
     * </p>
@@ -342,13 +535,9 @@ public class ProductOperation {
     public void generateCategoryFigure() {
         new JFXPanel(); // Initializes JavaFX environment.
         Platform.runLater(() -> {
-            List<Product> products = getAllProducts();
-            Map<String, Integer> categoryCount = new HashMap<>();
             // Count the number of products per category.
-            for (Product p : products) {
-                String category = p.getProCategory();
-                categoryCount.put(category, categoryCount.getOrDefault(category, 0) + 1);
-            }
+            Map<String, Integer> categoryCount =
+                    getCatalog().counts().categoryCounts;
             
             // Sort the categories in descending order by count.
             List<Map.Entry<String, Integer>> sortedCategories = new ArrayList<>(categoryCount.entrySet());
@@ -372,7 +561,7 @@ public class ProductOperation {
             // Create a Scene, take a snapshot of the chart, and save it to a PNG file.
             Scene scene = new Scene(barChart, 800, 600);
             WritableImage image = scene.snapshot(null);
-            File outputFile = new File("assignment/data/figure/category_chart.png");
+            File outputFile = new File(RecordFile.DATA_DIRECTORY, "figure/category_chart.png");
             try {
                 ImageIO.write(SwingFXUtils.fromFXImage(image, null), "png", outputFile);
                 System.out.println("Category chart generated at: " + outputFile.getAbsolutePath());
@@ -393,31 +582,21 @@ public class ProductOperation {
     public void generateDiscountFigure() {
         new JFXPanel(); // Initializes JavaFX environment.
         Platform.runLater(() -> {
-            List<Product> products = getAllProducts();
-            int lessThan30 = 0, between30And60 = 0, greaterThan60 = 0;
             // Classify products based on discount.
-            for (Product p : products) {
-                double discount = p.getProDiscount();
-                if (discount < 30) {
-                    lessThan30++;
-                } else if (discount <= 60) {
-                    between30And60++;
-                } else {
-                    greaterThan60++;
-                }
-            }
+            Map<String, Integer> discountCount =
+                    getCatalog().counts().discountCounts;
             
             // Build the PieChart with the discount groups.
             PieChart pieChart = new PieChart();
             pieChart.setTitle("Discount Distribution");
-            pieChart.getData().add(new PieChart.Data("Discount < 30", lessThan30));
-            pieChart.getData().add(new PieChart.Data("30 <= Discount <= 60", between30And60));
-            pieChart.getData().add(new PieChart.Data("Discount > 60", greaterThan60));
+            for (Map.Entry<String, Integer> entry : discountCount.entrySet()) {
+                pieChart.getData().add(new PieChart.Data(entry.getKey(), entry.getValue()));
+            }
             
             // Set up the Scene, capture the chart as an image, and write the image to a file.
             Scene scene = new Scene(pieChart, 800, 600);
             WritableImage image = scene.snapshot(null);
-            File outputFile = new File("assignment/data/figure/discount_chart.png");
+            File outputFile = new File(RecordFile.DATA_DIRECTORY, "figure/discount_chart.png");
             try {
                 ImageIO.write(SwingFXUtils.fromFXImage(image, null), "png", outputFile);
                 System.out.println("Discount chart generated at: " + outputFile.getAbsolutePath());
@@ -438,14 +617,8 @@ public class ProductOperation {
     public void generateLikesCountFigure() {
         new JFXPanel(); // Initializes JavaFX environment.
         Platform.runLater(() -> {
-            List<Product> products = getAllProducts();
-            Map<String, Integer> likesByCategory = new HashMap<>();
             // Sum up the likes count for each product category.
-            for (Product p : products) {
-                String category = p.getProCategory();
-                int likes = p.getProLikesCount();
-                likesByCategory.put(category, likesByCategory.getOrDefault(category, 0) + likes);
-            }
+            Map<String, Integer> likesByCategory = getProductColumns().likesByCategory();
             
             // Sort the categories in ascending order by total likes.
             List<Map.Entry<String, Integer>> sortedLikes = new ArrayList<>(likesByCategory.entrySet());
@@ -469,7 +642,7 @@ public class ProductOperation {
             // Create a scene with the chart, capture its snapshot, and save as an image.
             Scene scene = new Scene(barChart, 800, 600);
             WritableImage image = scene.snapshot(null);
-            File outputFile = new File("assignment/data/figure/likes_count_chart.png");
+            File outputFile = new File(RecordFile.DATA_DIRECTORY, "figure/likes_count_chart.png");
             try {
                 ImageIO.write(SwingFXUtils.fromFXImage(image, null), "png", outputFile);
                 System.out.println("Likes count chart generated at: " + outputFile.getAbsolutePath());
@@ -494,8 +667,10 @@ public class ProductOperation {
         
         // Execute JavaFX-related code on the JavaFX Application Thread.
         Platform.runLater(() -> {
-            // Retrieve all products from the data source.
-            List<Product> products = getAllProducts();
+            // Retrieve the discount and likes columns of all products.
+            ProductColumns products = getProductColumns();
+            double[] discounts = products.discounts();
+            int[] likes = products.likes();
 
             // Create a scatter chart with Number axes.
             final NumberAxis xAxis = new NumberAxis();
@@ -508,8 +683,8 @@ public class ProductOperation {
 
             // Create a data series and populate it with discount and likes count data.
             XYChart.Series<Number, Number> series = new XYChart.Series<>();
-            for (Product p : products) {
-                series.getData().add(new XYChart.Data<>(p.getProDiscount(), p.getProLikesCount()));
+            for (int i = 0; i < discounts.length; i++) {
+                series.getData().add(new XYChart.Data<>(discounts[i], likes[i]));
             }
             scatterChart.getData().add(series);
 
@@ -518,7 +693,7 @@ public class ProductOperation {
             WritableImage image = scene.snapshot(null);
             
             // Define the file to which the snapshot will be saved.
-            File outputFile = new File("assignment/data/figure/discount_likes_scatter_chart.png");
+            File outputFile = new File(RecordFile.DATA_DIRECTORY, "figure/discount_likes_scatter_chart.png");
             try {
                 // Write the snapshot image to the file in PNG format.
                 ImageIO.write(SwingFXUtils.fromFXImage(image, null), "png", outputFile);
@@ -537,11 +712,13 @@ public class ProductOperation {
      * </p>
      */
     public void deleteAllProducts() {
-        try (FileWriter writer = new FileWriter("assignment/data/products.txt", false)) {
-            writer.write(""); // Overwrite the file with an empty string.
+        try {
+            RecordFile.PRODUCTS.truncate(); // Overwrite the file with an empty string.
             System.out.println("All products deleted successfully.");
         } catch (IOException e) {
             System.err.println("Error deleting all products: " + e.getMessage());
+        } finally {
+            invalidateCatalog();
         }
     }
 
@@ -573,4 +750,39 @@ public class ProductOperation {
         this.totalPages = totalPages;
     }
   }
+
+    /**
+    * A helper class that encapsulates a page of filtered products together with facet counts.
+    * <p>
+    * Besides the page, it holds the number of matching products in each category, price bucket
+    * and discount bucket, counted over all matches rather than just the current page.
+    * </p>
+    */
+    public static class ProductFilterResult extends ProductListResult {
+        /** Number of matches per category that has any. */
+        public Map<String, Integer> categoryCounts;
+        /** Number of matches per price bucket. */
+        public Map<String, Integer> priceCounts;
+        /** Number of matches per discount bucket. */
+        public Map<String, Integer> discountCounts;
+
+    /**
+     * Constructs a new {@code ProductFilterResult} with the specified values.
+     *
+     * @param products       the list of products for the current page
+     * @param currentPage    the current page number
+     * @param totalPages     the total number of pages
+     * @param categoryCounts the number of matches per category
+     * @param priceCounts    the number of matches per price bucket
+     * @param discountCounts the number of matches per discount bucket
+     */
+    public ProductFilterResult(List<Product> products, int currentPage, int totalPages,
+                               Map<String, Integer> categoryCounts, Map<String, Integer> priceCounts,
+                               Map<String, Integer> discountCounts) {
+        super(products, currentPage, totalPages);
+        this.categoryCounts = categoryCounts;
+        this.priceCounts = priceCounts;
+        this.discountCounts = discountCounts;
+    }
+  }
 }
\ No newline at end of file
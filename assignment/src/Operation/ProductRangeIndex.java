@@ -0,0 +1,136 @@
+package Operation;
+
+import java.util.Arrays;
+
+/**
+ * The {@code ProductRangeIndex} class answers range queries on one numeric field of the catalog's
+ * products, such as every product priced between 500 and 800.
+ * <p>
+ * The field's values are kept in ascending order in a primitive array, next to the ordinal of the
+ * product each value belongs to. The products within a range occupy one contiguous run of the
+ * array, which two binary searches find, so a query costs O(log n) plus the size of its result.
+ * Like the other catalog indexes it never changes once built; a delete produces a new index with
+ * the removed ordinals dropped.
+ * </p>
+ */
+final class ProductRangeIndex {
+
+    /** Field key for the current price. */
+    static final String CURRENT_PRICE = "pro_current_price";
+
+    /** Field key for the raw price. */
+    static final String RAW_PRICE = "pro_raw_price";
+
+    /** Field key for the discount. */
+    static final String DISCOUNT = "pro_discount";
+
+    /** The field's values in ascending order. */
+    private final double[] values;
+
+    /** The ordinal of the product each value belongs to; equal values keep ordinals ascending. */
+    private final int[] ordinals;
+
+    /**
+     * Constructs an index from finished arrays.
+     */
+    private ProductRangeIndex(double[] values, int[] ordinals) {
+        this.values = values;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * Returns the column of a field.
+     *
+     * @param products the catalog's product columns.
+     * @param field    one of {@link #CURRENT_PRICE}, {@link #RAW_PRICE} or {@link #DISCOUNT}.
+     * @return the field's value for every product, or null if the key is unknown.
+     */
+    static double[] column(ProductColumns products, String field) {
+        if (CURRENT_PRICE.equals(field)) {
+            return products.currentPrices();
+        } else if (RAW_PRICE.equals(field)) {
+            return products.rawPrices();
+        } else if (DISCOUNT.equals(field)) {
+            return products.discounts();
+        }
+        return null;
+    }
+
+    /**
+     * Builds an index over one field.
+     *
+     * @param byOrdinal the field's value for every product; it is not modified.
+     * @return the new index.
+     */
+    static ProductRangeIndex build(double[] byOrdinal) {
+        Integer[] sorted = new Integer[byOrdinal.length];
+        for (int ordinal = 0; ordinal < byOrdinal.length; ordinal++) {
+            sorted[ordinal] = ordinal;
+        }
+        // The sort is stable, so ordinals with equal values stay ascending.
+        Arrays.sort(sorted, (a, b) -> Double.compare(byOrdinal[a], byOrdinal[b]));
+        double[] values = new double[sorted.length];
+        int[] ordinals = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ordinals[i] = sorted[i];
+            values[i] = byOrdinal[ordinals[i]];
+        }
+        return new ProductRangeIndex(values, ordinals);
+    }
+
+    /**
+     * Finds the products whose value lies within a range.
+     *
+     * @param min the smallest value accepted, inclusive.
+     * @param max the largest value accepted, inclusive.
+     * @return the matching ordinals, by ascending value.
+     */
+    int[] range(double min, double max) {
+        int from = firstIndex(min, false);
+        int to = firstIndex(max, true);
+        return from < to ? Arrays.copyOfRange(ordinals, from, to) : Postings.EMPTY;
+    }
+
+    /**
+     * Binary search for the first value not below the bound, or, with {@code past} set, the
+     * first value above it.
+     */
+    private int firstIndex(double bound, boolean past) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int comparison = Double.compare(values[mid], bound);
+            if (comparison < 0 || (past && comparison == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns a copy of this index with some products removed, shifting later ordinals down.
+     *
+     * @param removed the ordinals of the removed products, in ascending order.
+     * @return the new index.
+     */
+    ProductRangeIndex without(int[] removed) {
+        if (removed.length == 0) {
+            return this;
+        }
+        double[] keptValues = new double[values.length];
+        int[] keptOrdinals = new int[ordinals.length];
+        int count = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            int position = Arrays.binarySearch(removed, ordinals[i]);
+            if (position < 0) {
+                keptValues[count] = values[i];
+                keptOrdinals[count] = ordinals[i] - (-position - 1);
+                count++;
+            }
+        }
+        return new ProductRangeIndex(Arrays.copyOf(keptValues, count), Arrays.copyOf(keptOrdinals, count));
+    }
+}
@@ -0,0 +1,123 @@
+package Operation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code ProductRanking} class defines the orders products can be ranked in and picks the
+ * best few products of a candidate set.
+ * <p>
+ * Sort keys are the field names of the products file. Every order puts the most interesting
+ * product first: most liked, highest discount or lowest current price, or names in alphabetical
+ * order ignoring case. Products that compare equal keep their file order.
+ * </p>
+ */
+final class ProductRanking {
+
+    /** Sort key for the number of likes, most liked first. */
+    static final String LIKES = "pro_likes_count";
+
+    /** Sort key for the discount, highest discount first. */
+    static final String DISCOUNT = "pro_discount";
+
+    /** Sort key for the current price, cheapest first. */
+    static final String PRICE = "pro_current_price";
+
+    /** Sort key for the name, alphabetical ignoring case. */
+    static final String NAME = "pro_name";
+
+    private ProductRanking() {
+    }
+
+    /**
+     * Checks whether a sort key is known.
+     *
+     * @param sortKey the sort key to check.
+     * @return true if it is one of {@link #LIKES}, {@link #DISCOUNT}, {@link #PRICE} or {@link #NAME}.
+     */
+    static boolean isSortKey(String sortKey) {
+        return LIKES.equals(sortKey) || DISCOUNT.equals(sortKey) || PRICE.equals(sortKey) || NAME.equals(sortKey);
+    }
+
+    /**
+     * Returns the order of product ordinals for a sort key. The values compared are read straight
+     * from the columns.
+     *
+     * @param products the catalog's product columns.
+     * @param sortKey  a key for which {@link #isSortKey(String)} holds.
+     * @return the order, best product first, with equal products in file order.
+     */
+    static Comparator<Integer> order(ProductColumns products, String sortKey) {
+        Comparator<Integer> byValue;
+        if (LIKES.equals(sortKey)) {
+            int[] likes = products.likes();
+            byValue = (a, b) -> Integer.compare(likes[b], likes[a]);
+        } else if (DISCOUNT.equals(sortKey)) {
+            double[] discounts = products.discounts();
+            byValue = (a, b) -> Double.compare(discounts[b], discounts[a]);
+        } else if (PRICE.equals(sortKey)) {
+            double[] prices = products.currentPrices();
+            byValue = (a, b) -> Double.compare(prices[a], prices[b]);
+        } else {
+            Comparator<String> names = Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+            byValue = (a, b) -> names.compare(products.name(a), products.name(b));
+        }
+        return byValue.thenComparing(Comparator.naturalOrder());
+    }
+
+    /**
+     * Sorts the whole catalog.
+     *
+     * @param products the catalog's product columns.
+     * @param sortKey  a known sort key.
+     * @return every ordinal, best first; equal products keep their file order.
+     */
+    static int[] sort(ProductColumns products, String sortKey) {
+        Integer[] sorted = new Integer[products.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, order(products, sortKey));
+        int[] ordinals = new int[sorted.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = sorted[i];
+        }
+        return ordinals;
+    }
+
+    /**
+     * Picks the best candidates without sorting all of them.
+     * <p>
+     * The candidates are streamed through a heap that never holds more than {@code limit}
+     * ordinals, with the worst of the kept ones on top, so the cost is O(n log k) time and O(k)
+     * space however many products match.
+     * </p>
+     *
+     * @param products   the catalog's product columns.
+     * @param candidates the ordinals of the candidates.
+     * @param sortKey    a known sort key.
+     * @param limit      the maximum number of ordinals to return.
+     * @return up to {@code limit} ordinals, best first.
+     */
+    static int[] top(ProductColumns products, int[] candidates, String sortKey, int limit) {
+        if (limit <= 0 || candidates.length == 0) {
+            return Postings.EMPTY;
+        }
+        Comparator<Integer> byRank = order(products, sortKey);
+        PriorityQueue<Integer> kept = new PriorityQueue<>(Math.min(limit, candidates.length) + 1, byRank.reversed());
+        for (int ordinal : candidates) {
+            if (kept.size() < limit) {
+                kept.add(ordinal);
+            } else if (byRank.compare(ordinal, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(ordinal);
+            }
+        }
+        int[] best = new int[kept.size()];
+        for (int i = best.length - 1; i >= 0; i--) {
+            best[i] = kept.poll();
+        }
+        return best;
+    }
+}
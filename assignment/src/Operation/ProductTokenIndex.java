@@ -0,0 +1,319 @@
+package Operation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code ProductTokenIndex} class is an inverted index from search tokens to the products of
+ * a {@link ProductCatalog}.
+ * <p>
+ * The name, model and category of every product are split into tokens: runs of letters and
+ * digits, lower-cased. Each token maps to the sorted ordinals, positions in the catalog's product
+ * list, of the products that contain it. A search intersects the lists of the query's tokens, so
+ * it never looks at a product that cannot match. A fuzzy search first finds the indexed tokens
+ * close to each query token with a {@link FuzzyMatcher}, so misspelt words still find their products.
+ * </p>
+ * <p>
+ * The index never changes once built. A delete produces a new index with the removed ordinals
+ * dropped and the later ones shifted down, without tokenizing any product again. The index is
+ * persisted in a sidecar file whose header stores the size and modification time of the products
+ * file it describes, so a restart only tokenizes the catalog when the file has changed.
+ * </p>
+ */
+final class ProductTokenIndex {
+
+    /** Marker written at the start of every sidecar file; changed whenever the layout changes. */
+    private static final int MAGIC = 0x50544B32;
+
+    /** Sorted product ordinals for every token. */
+    private final Map<String, int[]> postings;
+
+    /** Number of products the ordinals refer to. */
+    private final int productCount;
+
+    /** Matcher over the tokens for fuzzy search, built on the first fuzzy search. */
+    private volatile FuzzyMatcher fuzzyMatcher;
+
+    /**
+     * Constructs an index from finished posting lists.
+     *
+     * @param postings     the sorted product ordinals for every token.
+     * @param productCount the number of products the ordinals refer to.
+     */
+    private ProductTokenIndex(Map<String, int[]> postings, int productCount) {
+        this.postings = postings;
+        this.productCount = productCount;
+    }
+
+    /**
+     * Builds an index by tokenizing every product.
+     *
+     * @param products the catalog's product columns.
+     * @return the new index.
+     */
+    static ProductTokenIndex build(ProductColumns products) {
+        Map<String, List<Integer>> lists = new HashMap<>();
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            tokens.clear();
+            tokenize(products.name(ordinal), tokens);
+            tokenize(products.model(ordinal), tokens);
+            tokenize(products.category(ordinal), tokens);
+            for (String token : tokens) {
+                lists.computeIfAbsent(token, t -> new ArrayList<>()).add(ordinal);
+            }
+        }
+        Map<String, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ordinals = new int[list.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = list.get(i);
+            }
+            postings.put(entry.getKey(), ordinals);
+        }
+        return new ProductTokenIndex(postings, products.size());
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     *
+     * @param text   the text to split; null adds nothing.
+     * @param tokens receives the tokens.
+     */
+    static void tokenize(String text, Set<String> tokens) {
+        if (text == null) return;
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+    }
+
+    /**
+     * Returns the number of products the ordinals refer to.
+     *
+     * @return the product count.
+     */
+    int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * Finds the products that contain every token of the query.
+     *
+     * @param query the search text; it is tokenized like the products.
+     * @return the matching ordinals in ascending order; empty if the query has no tokens.
+     */
+    int[] search(String query) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(query, tokens);
+        List<int[]> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            int[] ordinals = postings.get(token);
+            if (ordinals == null) {
+                return Postings.EMPTY;
+            }
+            lists.add(ordinals);
+        }
+        return Postings.intersectAll(lists);
+    }
+
+    /**
+     * Finds the products that contain, for every token of the query, some token within the given
+     * edit distance of it.
+     * <p>
+     * Short tokens are allowed fewer edits, since two edits turn a short word into almost any
+     * other: tokens of up to two characters must match exactly, and tokens of up to five
+     * characters may differ by one edit.
+     * </p>
+     *
+     * @param query       the search text; it is tokenized like the products.
+     * @param maxDistance the largest number of inserted, deleted or replaced characters per token.
+     * @return the matching ordinals in ascending order; empty if the query has no tokens.
+     */
+    int[] fuzzySearch(String query, int maxDistance) {
+        Set<String> tokens = new LinkedHashSet<>();
+        tokenize(query, tokens);
+        if (tokens.isEmpty()) {
+            return Postings.EMPTY;
+        }
+        FuzzyMatcher matcher = fuzzyMatcher;
+        if (matcher == null) {
+            matcher = new FuzzyMatcher(postings.keySet());
+            fuzzyMatcher = matcher;
+        }
+        List<int[]> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            // Products matching any of the close tokens match this query token.
+            int limit = Math.min(maxDistance, token.length() <= 2 ? 0 : token.length() <= 5 ? 1 : 2);
+            int[] ordinals = Postings.EMPTY;
+            for (String close : matcher.search(token, limit)) {
+                ordinals = Postings.union(ordinals, postings.get(close));
+            }
+            if (ordinals.length == 0) {
+                return Postings.EMPTY;
+            }
+            lists.add(ordinals);
+        }
+        return Postings.intersectAll(lists);
+    }
+
+    /**
+     * Returns a copy of this index with some products removed.
+     * <p>
+     * The removed ordinals are dropped from every list and the ordinals after them are shifted
+     * down, matching a product list with those entries taken out. Tokens left without products
+     * are dropped.
+     * </p>
+     *
+     * @param removed the ordinals of the removed products, in ascending order.
+     * @return the new index.
+     */
+    ProductTokenIndex without(int[] removed) {
+        if (removed.length == 0) {
+            return this;
+        }
+        Map<String, int[]> remaining = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+            int[] kept = Postings.without(entry.getValue(), removed);
+            if (kept.length > 0) {
+                remaining.put(entry.getKey(), kept);
+            }
+        }
+        return new ProductTokenIndex(remaining, productCount - removed.length);
+    }
+
+    /**
+     * Reads an index from its sidecar file.
+     *
+     * @param indexFile        the sidecar file.
+     * @param expectedLength   the current size of the products file.
+     * @param expectedModified the current modification time of the products file.
+     * @param productCount     the number of products in the catalog being loaded.
+     * @return the index, or null if the sidecar is missing, damaged or describes another version of the file.
+     */
+    static ProductTokenIndex load(File indexFile, long expectedLength, long expectedModified, int productCount) {
+        if (!indexFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC
+                    || in.readLong() != expectedLength
+                    || in.readLong() != expectedModified
+                    || in.readInt() != productCount) {
+                return null;
+            }
+            int tokenCount = in.readInt();
+            Map<String, int[]> postings = new HashMap<>(tokenCount * 2);
+            for (int i = 0; i < tokenCount; i++) {
+                String token = in.readUTF();
+                int[] ordinals = new int[readVarint(in)];
+                int previous = 0;
+                for (int j = 0; j < ordinals.length; j++) {
+                    previous += readVarint(in);
+                    ordinals[j] = previous;
+                }
+                postings.put(token, ordinals);
+            }
+            return new ProductTokenIndex(postings, productCount);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or unreadable sidecar is simply rebuilt.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index to its sidecar file.
+     * <p>
+     * The index is written to a temporary file which then replaces the sidecar, so a crash
+     * part-way through never leaves a sidecar whose header matches the products file but whose
+     * postings are cut short.
+     * </p>
+     *
+     * @param indexFile    the sidecar file.
+     * @param dataLength   the size of the products file the index describes.
+     * @param dataModified the modification time of the products file the index describes.
+     */
+    void save(File indexFile, long dataLength, long dataModified) {
+        File replacement = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(replacement)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(dataLength);
+                out.writeLong(dataModified);
+                out.writeInt(productCount);
+                out.writeInt(postings.size());
+                for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    int[] ordinals = entry.getValue();
+                    writeVarint(out, ordinals.length);
+                    // Ordinals are stored as gaps from the previous one, which are small and take a byte or two.
+                    int previous = 0;
+                    for (int ordinal : ordinals) {
+                        writeVarint(out, ordinal - previous);
+                        previous = ordinal;
+                    }
+                }
+            }
+            try {
+                Files.move(replacement.toPath(), indexFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(replacement.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing token index file: " + e.getMessage());
+            replacement.delete();
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Writes a non-negative number in 7-bit groups, low group first, with the high bit of each
+     * byte set when more groups follow.
+     */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads a number written by {@link #writeVarint(DataOutputStream, int)}.
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in token index file");
+    }
+}
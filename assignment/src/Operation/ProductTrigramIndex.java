@@ -0,0 +1,154 @@
+package Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code ProductTrigramIndex} class answers case-insensitive substring searches on product
+ * names without testing every product.
+ * <p>
+ * Every run of three consecutive characters of a lower-cased name is a trigram, and each trigram
+ * maps to the sorted ordinals of the products whose name contains it. A name that contains the
+ * keyword contains all of the keyword's trigrams, so intersecting their lists gives a small set
+ * of candidates that is then checked with {@link String#contains(CharSequence)}. The results are
+ * the same as testing {@code name.toLowerCase().contains(keyword.toLowerCase())} on every product.
+ * Keywords shorter than three characters have no trigrams and are checked against every name.
+ * </p>
+ * <p>
+ * Like {@link ProductTokenIndex}, the index never changes once built; a delete produces a new
+ * index with the removed ordinals dropped.
+ * </p>
+ */
+final class ProductTrigramIndex {
+
+    /** Lower-cased name of every product by ordinal; null where the product has no name. */
+    private final String[] lowerNames;
+
+    /** Sorted product ordinals for every trigram, keyed by the trigram's packed characters. */
+    private final Map<Long, int[]> postings;
+
+    /**
+     * Constructs an index from finished posting lists.
+     *
+     * @param lowerNames the lower-cased names by ordinal.
+     * @param postings   the sorted product ordinals for every trigram.
+     */
+    private ProductTrigramIndex(String[] lowerNames, Map<Long, int[]> postings) {
+        this.lowerNames = lowerNames;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds an index over the names of the given products.
+     *
+     * @param products the catalog's product columns.
+     * @return the new index.
+     */
+    static ProductTrigramIndex build(ProductColumns products) {
+        String[] lowerNames = new String[products.size()];
+        Map<Long, List<Integer>> lists = new HashMap<>();
+        Set<Long> trigrams = new HashSet<>();
+        // Products with the same name share one lower-cased copy of it.
+        Map<String, String> lowered = new HashMap<>();
+        for (int ordinal = 0; ordinal < lowerNames.length; ordinal++) {
+            String name = products.name(ordinal);
+            if (name == null) continue;
+            lowerNames[ordinal] = lowered.computeIfAbsent(name, String::toLowerCase);
+            trigrams.clear();
+            addTrigrams(lowerNames[ordinal], trigrams);
+            for (Long trigram : trigrams) {
+                lists.computeIfAbsent(trigram, t -> new ArrayList<>()).add(ordinal);
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ordinals = new int[list.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = list.get(i);
+            }
+            postings.put(entry.getKey(), ordinals);
+        }
+        return new ProductTrigramIndex(lowerNames, postings);
+    }
+
+    /**
+     * Adds every trigram of the text, packed into a long as three 16-bit characters.
+     */
+    private static void addTrigrams(String text, Set<Long> trigrams) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+    }
+
+    /**
+     * Finds the products whose lower-cased name contains the lower-cased keyword.
+     *
+     * @param keyword the keyword to search for.
+     * @return the matching ordinals in ascending order.
+     */
+    int[] search(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        int[] candidates;
+        if (lowerKeyword.length() < 3) {
+            candidates = null;
+        } else {
+            Set<Long> trigrams = new HashSet<>();
+            addTrigrams(lowerKeyword, trigrams);
+            List<int[]> lists = new ArrayList<>(trigrams.size());
+            for (Long trigram : trigrams) {
+                int[] ordinals = postings.get(trigram);
+                if (ordinals == null) {
+                    return Postings.EMPTY;
+                }
+                lists.add(ordinals);
+            }
+            candidates = Postings.intersectAll(lists);
+        }
+
+        // Verify the candidates, or every name when the keyword is too short to have trigrams.
+        int total = candidates == null ? lowerNames.length : candidates.length;
+        int[] matches = new int[total];
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            int ordinal = candidates == null ? i : candidates[i];
+            String name = lowerNames[ordinal];
+            if (name != null && name.contains(lowerKeyword)) {
+                matches[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Returns a copy of this index with some products removed, shifting later ordinals down.
+     *
+     * @param removed the ordinals of the removed products, in ascending order.
+     * @return the new index.
+     */
+    ProductTrigramIndex without(int[] removed) {
+        if (removed.length == 0) {
+            return this;
+        }
+        String[] remainingNames = new String[lowerNames.length - removed.length];
+        int next = 0;
+        for (int ordinal = 0; ordinal < lowerNames.length; ordinal++) {
+            if (Arrays.binarySearch(removed, ordinal) < 0) {
+                remainingNames[next++] = lowerNames[ordinal];
+            }
+        }
+        Map<Long, int[]> remaining = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+            int[] kept = Postings.without(entry.getValue(), removed);
+            if (kept.length > 0) {
+                remaining.put(entry.getKey(), kept);
+            }
+        }
+        return new ProductTrigramIndex(remainingNames, remaining);
+    }
+}
@@ -0,0 +1,880 @@
+package Operation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.json.simple.parser.ParseException;
+
+import Model.Customer;
+import Model.Order;
+import Model.Product;
+
+/**
+ * The {@code RecordCodec} class reads and writes the fixed record shapes stored in the data files.
+ * <p>
+ * Records are decoded directly from their UTF-8 bytes into {@link Model.Product}, {@link Model.Order}
+ * and {@link Model.Customer} objects: field names are matched in place, numbers are converted without
+ * building intermediate strings, and no map or boxed value is created per record. Unknown fields are
+ * skipped, so records written by other tools still decode. Categories and the product and user
+ * IDs are resolved through the {@link SymbolTable}s, so a value repeated across records is one
+ * shared instance and costs no allocation once it is known.
+ * </p>
+ * <p>
+ * Encoding writes the fields in the same order and with the same escaping as
+ * {@code org.json.simple.JSONValue}, so records produced here are byte-for-byte identical to the
+ * ones the application has always written.
+ * </p>
+ * <p>
+ * A deleted record is marked by appending a tombstone, a record of the form
+ * <code>{"tombstone":"&lt;key&gt;"}</code> naming the primary key it deletes.
+ * </p>
+ */
+final class RecordCodec {
+
+    /** Field names of a product record, in the order they are written. */
+    private static final byte[][] PRODUCT_FIELDS = fieldNames("pro_id", "pro_model", "pro_category",
+            "pro_name", "pro_current_price", "pro_raw_price", "pro_discount", "pro_likes_count");
+
+    /** Field names of an order record, in the order they are written. */
+    private static final byte[][] ORDER_FIELDS = fieldNames("order_id", "user_id", "pro_id", "order_time");
+
+    /** Field names of a user record, in the order they are written. */
+    private static final byte[][] USER_FIELDS = fieldNames("user_id", "user_name", "user_password",
+            "user_register_time", "user_role", "user_email", "user_mobile");
+
+    /** Field holding the deleted key in a tombstone record. */
+    private static final String TOMBSTONE_FIELD = "tombstone";
+
+    /** {@link #TOMBSTONE_FIELD} as a field name for the encoder. */
+    private static final byte[] TOMBSTONE_NAME = TOMBSTONE_FIELD.getBytes(StandardCharsets.US_ASCII);
+
+    /** The bytes every tombstone record starts with. */
+    private static final byte[] TOMBSTONE_PREFIX = "{\"tombstone\":".getBytes(StandardCharsets.US_ASCII);
+
+    /** Powers of ten that are exactly representable as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Digits used for {@code \\uXXXX} escapes. */
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private RecordCodec() {
+    }
+
+    // ------------------------------------------------------------------ decoding
+
+    /**
+     * Decodes a product record.
+     *
+     * @param line a JSON-formatted product record.
+     * @return the corresponding {@link Model.Product}.
+     * @throws ParseException        if the line is not a valid JSON object.
+     * @throws NumberFormatException if a numerical field is missing or cannot be converted.
+     */
+    static Product decodeProduct(String line) throws ParseException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return decodeProduct(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a product record from its UTF-8 bytes.
+     *
+     * @param buffer the buffer holding the record.
+     * @param start  the index of the first byte of the record.
+     * @param length the length of the record in bytes.
+     * @return the corresponding {@link Model.Product}.
+     * @throws ParseException        if the record is not a valid JSON object.
+     * @throws NumberFormatException if a numerical field is missing or cannot be converted.
+     */
+    static Product decodeProduct(byte[] buffer, int start, int length) throws ParseException {
+        Reader in = new Reader(buffer, start, length);
+        String proId = null, proModel = null, proCategory = null, proName = null;
+        double currentPrice = 0, rawPrice = 0, discount = 0;
+        int likesCount = 0;
+        int seen = 0;
+
+        in.beginObject();
+        while (in.nextField()) {
+            int field = in.readFieldName(PRODUCT_FIELDS);
+            switch (field) {
+                case 0: proId = in.readSymbol(SymbolTable.PRODUCT_IDS); break;
+                case 1: proModel = in.readString(); break;
+                case 2: proCategory = in.readSymbol(SymbolTable.CATEGORIES); break;
+                case 3: proName = in.readString(); break;
+                case 4: currentPrice = in.readDouble(); break;
+                case 5: rawPrice = in.readDouble(); break;
+                case 6: discount = in.readDouble(); break;
+                case 7: likesCount = in.readInt(); break;
+                default: in.skipValue(); continue;
+            }
+            seen |= 1 << field;
+        }
+        in.endOfRecord();
+
+        // The numerical fields have no sensible default, so a record without them is rejected.
+        for (int field = 4; field < PRODUCT_FIELDS.length; field++) {
+            if ((seen & (1 << field)) == 0) {
+                throw new NumberFormatException("missing " + new String(PRODUCT_FIELDS[field], StandardCharsets.US_ASCII));
+            }
+        }
+        return new Product(proId, proModel, proCategory, proName, currentPrice, rawPrice, discount, likesCount);
+    }
+
+    /**
+     * Decodes an order record. Missing fields are left null.
+     *
+     * @param line a JSON-formatted order record.
+     * @return the corresponding {@link Model.Order}.
+     * @throws ParseException if the line is not a valid JSON object.
+     */
+    static Order decodeOrder(String line) throws ParseException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return decodeOrder(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes an order record from its UTF-8 bytes. Missing fields are left null.
+     *
+     * @param buffer the buffer holding the record.
+     * @param start  the index of the first byte of the record.
+     * @param length the length of the record in bytes.
+     * @return the corresponding {@link Model.Order}.
+     * @throws ParseException if the record is not a valid JSON object.
+     */
+    static Order decodeOrder(byte[] buffer, int start, int length) throws ParseException {
+        Reader in = new Reader(buffer, start, length);
+        String orderId = null, userId = null, proId = null, orderTime = null;
+
+        in.beginObject();
+        while (in.nextField()) {
+            switch (in.readFieldName(ORDER_FIELDS)) {
+                case 0: orderId = in.readString(); break;
+                case 1: userId = in.readSymbol(SymbolTable.USER_IDS); break;
+                case 2: proId = in.readSymbol(SymbolTable.PRODUCT_IDS); break;
+                case 3: orderTime = in.readString(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endOfRecord();
+        return new Order(orderId, userId, proId, orderTime);
+    }
+
+    /**
+     * Decodes a user record into a customer. Missing fields are left null.
+     *
+     * @param line a JSON-formatted user record.
+     * @return the corresponding {@link Model.Customer}.
+     * @throws ParseException if the line is not a valid JSON object.
+     */
+    static Customer decodeCustomer(String line) throws ParseException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return decodeCustomer(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a user record into a customer from its UTF-8 bytes. Missing fields are left null.
+     *
+     * @param buffer the buffer holding the record.
+     * @param start  the index of the first byte of the record.
+     * @param length the length of the record in bytes.
+     * @return the corresponding {@link Model.Customer}.
+     * @throws ParseException if the record is not a valid JSON object.
+     */
+    static Customer decodeCustomer(byte[] buffer, int start, int length) throws ParseException {
+        Reader in = new Reader(buffer, start, length);
+        String userId = null, userName = null, userPassword = null, registerTime = null;
+        String userRole = null, userEmail = null, userMobile = null;
+
+        in.beginObject();
+        while (in.nextField()) {
+            switch (in.readFieldName(USER_FIELDS)) {
+                case 0: userId = in.readSymbol(SymbolTable.USER_IDS); break;
+                case 1: userName = in.readString(); break;
+                case 2: userPassword = in.readString(); break;
+                case 3: registerTime = in.readString(); break;
+                case 4: userRole = in.readString(); break;
+                case 5: userEmail = in.readString(); break;
+                case 6: userMobile = in.readString(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endOfRecord();
+        return new Customer(userId, userName, userPassword, registerTime, userRole, userEmail, userMobile);
+    }
+
+    /**
+     * Extracts the value of a single top-level field without decoding the rest of the record.
+     *
+     * @param line  a JSON-formatted record.
+     * @param field the field name.
+     * @return the field's value as text, or null if the field is absent or null.
+     * @throws ParseException if the line is not a valid JSON object.
+     */
+    static String extractField(String line, String field) throws ParseException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return extractField(bytes, 0, bytes.length, field);
+    }
+
+    /**
+     * Extracts the value of a single top-level field from a record's UTF-8 bytes.
+     * <p>
+     * String values are returned unescaped; numbers and literals are returned as written. Nested
+     * objects and arrays are not keys and yield null.
+     * </p>
+     *
+     * @param buffer the buffer holding the record.
+     * @param start  the index of the first byte of the record.
+     * @param length the length of the record in bytes.
+     * @param field  the field name.
+     * @return the field's value as text, or null if the field is absent or null.
+     * @throws ParseException if the record is not a valid JSON object.
+     */
+    static String extractField(byte[] buffer, int start, int length, String field) throws ParseException {
+        Reader in = new Reader(buffer, start, length);
+        String value = null;
+
+        in.beginObject();
+        while (in.nextField()) {
+            if (in.readFieldName(field)) {
+                // A repeated field keeps its last value, as a JSON object would.
+                value = in.readScalar();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endOfRecord();
+        return value;
+    }
+
+    /**
+     * Checks whether a record is a tombstone.
+     *
+     * @param line a JSON-formatted record.
+     * @return true if the record marks a deleted key.
+     */
+    static boolean isTombstone(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ') i++;
+        return line.startsWith("{\"tombstone\":", i);
+    }
+
+    /**
+     * Checks whether a record held as UTF-8 bytes is a tombstone.
+     *
+     * @param buffer the buffer holding the record, starting at index 0.
+     * @param length the length of the record in bytes.
+     * @return true if the record marks a deleted key.
+     */
+    static boolean isTombstone(byte[] buffer, int length) {
+        int i = 0;
+        while (i < length && buffer[i] == ' ') i++;
+        if (length - i < TOMBSTONE_PREFIX.length) return false;
+        for (int j = 0; j < TOMBSTONE_PREFIX.length; j++) {
+            if (buffer[i + j] != TOMBSTONE_PREFIX[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the key a tombstone deletes.
+     *
+     * @param line a tombstone record.
+     * @return the deleted key, or null if the tombstone is malformed.
+     */
+    static String tombstoneKey(String line) {
+        try {
+            return extractField(line, TOMBSTONE_FIELD);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the key a tombstone held as UTF-8 bytes deletes.
+     *
+     * @param buffer the buffer holding the record, starting at index 0.
+     * @param length the length of the record in bytes.
+     * @return the deleted key, or null if the tombstone is malformed.
+     */
+    static String tombstoneKey(byte[] buffer, int length) {
+        try {
+            return extractField(buffer, 0, length, TOMBSTONE_FIELD);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------ encoding
+
+    /**
+     * Encodes a tombstone for the given primary key.
+     *
+     * @param key the key of the deleted record.
+     * @return the JSON-formatted tombstone, without a line terminator.
+     */
+    static String encodeTombstone(String key) {
+        StringBuilder out = new StringBuilder(32).append('{');
+        appendString(out, TOMBSTONE_NAME, key);
+        return out.append('}').toString();
+    }
+
+    /**
+     * Encodes a product record.
+     *
+     * @param product the product to write.
+     * @return the JSON-formatted record, without a line terminator.
+     */
+    static String encodeProduct(Product product) {
+        StringBuilder out = new StringBuilder(192).append('{');
+        appendString(out, PRODUCT_FIELDS[0], product.getProId());
+        appendString(out, PRODUCT_FIELDS[1], product.getProModel());
+        appendString(out, PRODUCT_FIELDS[2], product.getProCategory());
+        appendString(out, PRODUCT_FIELDS[3], product.getProName());
+        appendDouble(out, PRODUCT_FIELDS[4], product.getProCurrentPrice());
+        appendDouble(out, PRODUCT_FIELDS[5], product.getProRawPrice());
+        appendDouble(out, PRODUCT_FIELDS[6], product.getProDiscount());
+        appendName(out, PRODUCT_FIELDS[7]).append(product.getProLikesCount());
+        return out.append('}').toString();
+    }
+
+    /**
+     * Encodes an order record.
+     *
+     * @param order the order to write.
+     * @return the JSON-formatted record, without a line terminator.
+     */
+    static String encodeOrder(Order order) {
+        StringBuilder out = new StringBuilder(96).append('{');
+        appendString(out, ORDER_FIELDS[0], order.getOrderId());
+        appendString(out, ORDER_FIELDS[1], order.getUserId());
+        appendString(out, ORDER_FIELDS[2], order.getProId());
+        appendString(out, ORDER_FIELDS[3], order.getOrderTime());
+        return out.append('}').toString();
+    }
+
+    /**
+     * Encodes a customer record.
+     *
+     * @param customer the customer to write; the password is written as given.
+     * @return the JSON-formatted record, without a line terminator.
+     */
+    static String encodeCustomer(Customer customer) {
+        StringBuilder out = new StringBuilder(192).append('{');
+        appendString(out, USER_FIELDS[0], customer.getUserId());
+        appendString(out, USER_FIELDS[1], customer.getUserName());
+        appendString(out, USER_FIELDS[2], customer.getUserPassword());
+        appendString(out, USER_FIELDS[3], customer.getUserRegisterTime());
+        appendString(out, USER_FIELDS[4], customer.getUserRole());
+        appendString(out, USER_FIELDS[5], customer.getUserEmail());
+        appendString(out, USER_FIELDS[6], customer.getUserMobile());
+        return out.append('}').toString();
+    }
+
+    /**
+     * Writes a field name and separator, preceded by a comma unless it is the first field.
+     */
+    private static StringBuilder appendName(StringBuilder out, byte[] name) {
+        if (out.length() > 1) {
+            out.append(',');
+        }
+        out.append('"');
+        for (byte b : name) {
+            out.append((char) b);
+        }
+        return out.append("\":");
+    }
+
+    /**
+     * Writes a string field, or a JSON null for a null value.
+     */
+    private static void appendString(StringBuilder out, byte[] name, String value) {
+        appendName(out, name);
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '/': out.append("\\/"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    // The same ranges json-simple escapes, so output stays identical to earlier records.
+                    if (c <= 0x1F || (c >= 0x7F && c <= 0x9F) || (c >= 0x2000 && c <= 0x20FF)) {
+                        out.append("\\u")
+                           .append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF])
+                           .append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Writes a numerical field; values that JSON cannot represent are written as null.
+     */
+    private static void appendDouble(StringBuilder out, byte[] name, double value) {
+        appendName(out, name);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static byte[][] fieldNames(String... names) {
+        byte[][] fields = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return fields;
+    }
+
+    // ------------------------------------------------------------------ reader
+
+    /**
+     * A cursor over the bytes of one record.
+     */
+    private static final class Reader {
+        private final byte[] buffer;
+        private final int recordStart;
+        private final int end;
+        private int pos;
+        private int fieldCount;
+
+        Reader(byte[] buffer, int start, int length) {
+            this.buffer = buffer;
+            this.recordStart = start;
+            this.pos = start;
+            this.end = start + length;
+        }
+
+        /** Consumes the opening brace of the record. */
+        void beginObject() throws ParseException {
+            expect('{');
+        }
+
+        /**
+         * Moves to the next field of the record.
+         *
+         * @return false once the closing brace has been consumed.
+         */
+        boolean nextField() throws ParseException {
+            skipWhitespace();
+            if (pos < end && buffer[pos] == '}') {
+                pos++;
+                return false;
+            }
+            if (fieldCount++ > 0) {
+                expect(',');
+            }
+            return true;
+        }
+
+        /** Checks that nothing but whitespace follows the record. */
+        void endOfRecord() throws ParseException {
+            skipWhitespace();
+            if (pos < end) {
+                throw unexpected();
+            }
+        }
+
+        /**
+         * Reads a field name and the following colon.
+         *
+         * @return the index of the name in {@code names}, or -1 for a field outside the schema.
+         */
+        int readFieldName(byte[][] names) throws ParseException {
+            int start = pos;
+            int length = readNameBounds();
+            int match = -1;
+            if (length >= 0) {
+                for (int i = 0; i < names.length && match < 0; i++) {
+                    if (regionMatches(start, length, names[i])) match = i;
+                }
+            } else {
+                // An escaped name; decode it before comparing.
+                pos = start;
+                byte[] decoded = readString().getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < names.length && match < 0; i++) {
+                    if (Arrays.equals(decoded, names[i])) match = i;
+                }
+            }
+            expect(':');
+            return match;
+        }
+
+        /**
+         * Reads a field name and the following colon.
+         *
+         * @return true if the name equals {@code name}.
+         */
+        boolean readFieldName(String name) throws ParseException {
+            int start = pos;
+            int length = readNameBounds();
+            boolean match;
+            if (length >= 0) {
+                match = length == name.length();
+                // Field names are ASCII, so each byte is compared with one character.
+                for (int i = 0; match && i < length; i++) {
+                    match = buffer[start + 1 + i] == name.charAt(i);
+                }
+            } else {
+                pos = start;
+                match = name.equals(readString());
+            }
+            expect(':');
+            return match;
+        }
+
+        /**
+         * Steps over a quoted name that contains no escapes.
+         *
+         * @return the length of the name, or -1 if it contains an escape and must be decoded.
+         */
+        private int readNameBounds() throws ParseException {
+            skipWhitespace();
+            if (pos >= end || buffer[pos] != '"') throw unexpected();
+            int start = ++pos;
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b == '"') {
+                    pos++;
+                    return pos - 1 - start;
+                }
+                if (b == '\\') return -1;
+                pos++;
+            }
+            throw unexpected();
+        }
+
+        private boolean regionMatches(int quote, int length, byte[] name) {
+            if (length != name.length) return false;
+            for (int i = 0; i < length; i++) {
+                if (buffer[quote + 1 + i] != name[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Reads a string value; a JSON null yields null.
+         */
+        String readString() throws ParseException {
+            skipWhitespace();
+            if (pos < end && buffer[pos] == 'n') {
+                readLiteral("null");
+                return null;
+            }
+            if (pos >= end || buffer[pos] != '"') throw unexpected();
+            int start = ++pos;
+            boolean ascii = true;
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b == '"') {
+                    String value = new String(buffer, start, pos - start,
+                            ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                    pos++;
+                    return value;
+                }
+                if (b == '\\') {
+                    return readEscapedString(start);
+                }
+                if (b < 0) ascii = false;
+                pos++;
+            }
+            throw unexpected();
+        }
+
+        /**
+         * Reads a string value as the shared instance from a symbol table; a JSON null yields null.
+         */
+        String readSymbol(SymbolTable table) throws ParseException {
+            skipWhitespace();
+            if (pos < end && buffer[pos] == 'n') {
+                readLiteral("null");
+                return null;
+            }
+            if (pos >= end || buffer[pos] != '"') throw unexpected();
+            int start = ++pos;
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b == '"') {
+                    pos++;
+                    return table.intern(buffer, start, pos - 1 - start);
+                }
+                if (b == '\\') {
+                    return table.intern(readEscapedString(start));
+                }
+                pos++;
+            }
+            throw unexpected();
+        }
+
+        /**
+         * Finishes reading a string that contains escape sequences, starting again from its first byte.
+         */
+        private String readEscapedString(int start) throws ParseException {
+            StringBuilder value = new StringBuilder(pos - start + 16);
+            int segment = start;
+            pos = start;
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b == '"') {
+                    value.append(new String(buffer, segment, pos - segment, StandardCharsets.UTF_8));
+                    pos++;
+                    return value.toString();
+                }
+                if (b != '\\') {
+                    pos++;
+                    continue;
+                }
+                value.append(new String(buffer, segment, pos - segment, StandardCharsets.UTF_8));
+                if (++pos >= end) break;
+                switch (buffer[pos]) {
+                    case '"': value.append('"'); break;
+                    case '\\': value.append('\\'); break;
+                    case '/': value.append('/'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 >= end) throw unexpected();
+                        int code = 0;
+                        for (int i = 1; i <= 4; i++) {
+                            int digit = Character.digit(buffer[pos + i], 16);
+                            if (digit < 0) {
+                                pos += i;
+                                throw unexpected();
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        value.append((char) code);
+                        pos += 4;
+                        break;
+                    default:
+                        throw unexpected();
+                }
+                segment = ++pos;
+            }
+            throw unexpected();
+        }
+
+        /**
+         * Reads a numerical value. A quoted number is accepted as well, since such records have
+         * always been converted from their text.
+         */
+        double readDouble() throws ParseException {
+            skipWhitespace();
+            if (pos < end && buffer[pos] == '"') {
+                return Double.parseDouble(nonNull(readString()));
+            }
+            int start = pos;
+            int tokenEnd = skipNumber();
+            if (tokenEnd == start) {
+                throw new NumberFormatException(nonNumber());
+            }
+
+            // Fast path: up to 15 significant digits and no exponent. The digits and the power of
+            // ten are both exact doubles, so one division gives the correctly rounded value.
+            int i = start;
+            boolean negative = buffer[i] == '-';
+            if (negative) i++;
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = -1;
+            for (; i < tokenEnd; i++) {
+                byte b = buffer[i];
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fractionDigits >= 0) fractionDigits++;
+                } else if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    break;
+                }
+            }
+            if (i == tokenEnd && digits > 0 && digits <= 15 && fractionDigits != 0) {
+                double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(buffer, start, tokenEnd - start, StandardCharsets.ISO_8859_1));
+        }
+
+        /**
+         * Reads an integer value. A number with a fraction or exponent is rejected, as
+         * {@link Integer#parseInt(String)} would.
+         */
+        int readInt() throws ParseException {
+            skipWhitespace();
+            if (pos < end && buffer[pos] == '"') {
+                return Integer.parseInt(nonNull(readString()));
+            }
+            int start = pos;
+            int tokenEnd = skipNumber();
+            if (tokenEnd == start) {
+                throw new NumberFormatException(nonNumber());
+            }
+            int i = start;
+            boolean negative = buffer[i] == '-';
+            if (negative) i++;
+            if (tokenEnd - i > 0 && tokenEnd - i <= 9) {
+                int value = 0;
+                for (; i < tokenEnd; i++) {
+                    byte b = buffer[i];
+                    if (b < '0' || b > '9') break;
+                    value = value * 10 + (b - '0');
+                }
+                if (i == tokenEnd) return negative ? -value : value;
+            }
+            return Integer.parseInt(new String(buffer, start, tokenEnd - start, StandardCharsets.ISO_8859_1));
+        }
+
+        /**
+         * Reads a string, number or literal as text; nested values are skipped and yield null.
+         */
+        String readScalar() throws ParseException {
+            skipWhitespace();
+            if (pos >= end) throw unexpected();
+            byte b = buffer[pos];
+            if (b == '"' || b == 'n') return readString();
+            if (b == '{' || b == '[') {
+                skipValue();
+                return null;
+            }
+            if (b == 't') {
+                readLiteral("true");
+                return "true";
+            }
+            if (b == 'f') {
+                readLiteral("false");
+                return "false";
+            }
+            int start = pos;
+            int tokenEnd = skipNumber();
+            if (tokenEnd == start) throw unexpected();
+            return new String(buffer, start, tokenEnd - start, StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Steps over a value of any type, including nested objects and arrays.
+         */
+        void skipValue() throws ParseException {
+            skipWhitespace();
+            if (pos >= end) throw unexpected();
+            switch (buffer[pos]) {
+                case '"': readString(); break;
+                case 't': readLiteral("true"); break;
+                case 'f': readLiteral("false"); break;
+                case 'n': readLiteral("null"); break;
+                case '{':
+                    pos++;
+                    int fields = 0;
+                    while (true) {
+                        skipWhitespace();
+                        if (pos < end && buffer[pos] == '}') {
+                            pos++;
+                            break;
+                        }
+                        if (fields++ > 0) expect(',');
+                        skipWhitespace();
+                        readString();
+                        expect(':');
+                        skipValue();
+                    }
+                    break;
+                case '[':
+                    pos++;
+                    int elements = 0;
+                    while (true) {
+                        skipWhitespace();
+                        if (pos < end && buffer[pos] == ']') {
+                            pos++;
+                            break;
+                        }
+                        if (elements++ > 0) expect(',');
+                        skipValue();
+                    }
+                    break;
+                default:
+                    int start = pos;
+                    if (skipNumber() == start) throw unexpected();
+            }
+        }
+
+        /**
+         * Advances past the characters that can make up a number.
+         *
+         * @return the index just after the number.
+         */
+        private int skipNumber() {
+            while (pos < end) {
+                byte b = buffer[pos];
+                if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            return pos;
+        }
+
+        private void readLiteral(String literal) throws ParseException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (pos >= end || buffer[pos] != literal.charAt(i)) throw unexpected();
+                pos++;
+            }
+        }
+
+        private void expect(char c) throws ParseException {
+            skipWhitespace();
+            if (pos >= end || buffer[pos] != c) throw unexpected();
+            pos++;
+        }
+
+        private void skipWhitespace() {
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') break;
+                pos++;
+            }
+        }
+
+        private static String nonNull(String text) {
+            if (text == null) throw new NumberFormatException("null");
+            return text;
+        }
+
+        /**
+         * Describes a value that should have been a number, for a {@link NumberFormatException}.
+         */
+        private String nonNumber() throws ParseException {
+            String value = readScalar();
+            return value == null ? "null" : "For input string: \"" + value + "\"";
+        }
+
+        /**
+         * Builds the exception for the character at the current position, counted from the
+         * start of the record.
+         */
+        private ParseException unexpected() {
+            int position = pos - recordStart;
+            if (pos >= end) {
+                return new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, "END OF FILE");
+            }
+            return new ParseException(position, ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) (buffer[pos] & 0xFF)));
+        }
+    }
+}
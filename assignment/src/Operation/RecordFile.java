@@ -0,0 +1,1017 @@
+package Operation;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The {@code RecordFile} class gives byte-level access to one of the JSON-lines data files.
+ * <p>
+ * Every record occupies a single line, so it can be addressed by the byte offset of its first
+ * character and its length without the line terminator. Appends and rewrites performed through
+ * this class keep the indexes and page tables registered on the file in step with its contents.
+ * </p>
+ * <p>
+ * Records are deleted by appending a tombstone rather than rewriting the file. Scans skip deleted
+ * records and tombstones, and once the share of such garbage passes the compaction threshold the
+ * file is compacted on a background thread. The threshold defaults to the
+ * {@value #COMPACTION_THRESHOLD_PROPERTY} system property, or 0.3 if it is not set.
+ * </p>
+ * <p>
+ * A change never truncates the live file: whole-file rewrites are written to a temporary file
+ * that is then moved over the data file in one atomic step, so a crash leaves either the old
+ * contents or the new ones. How often written data is forced to the disk is set per file by its
+ * {@link Durability}, which is fixed when the file is opened. It is taken from the
+ * {@value #DURABILITY_PROPERTY}{@code .<file name>} system property, then the
+ * {@value #DURABILITY_PROPERTY} property, and is {@link Durability#NONE} if neither is set.
+ * </p>
+ * <p>
+ * Each file has a read-write lock. Reads, scans and index lookups share the read lock, and every
+ * change to the file takes the write lock, so an append, delete, rewrite or compaction never
+ * interleaves with another change or with a reader. The indexes and page tables take the read
+ * lock before their own monitor, so the lock order is always file first, then structure.
+ * Callers that read and then write back must hold {@link #writeLock()} across both steps.
+ * </p>
+ */
+final class RecordFile {
+
+    /** System property holding the default garbage ratio above which a file is compacted. */
+    static final String COMPACTION_THRESHOLD_PROPERTY = "compaction.threshold";
+
+    /** System property holding the durability, optionally followed by "." and a file name. */
+    static final String DURABILITY_PROPERTY = "durability";
+
+    /** System property holding the directory of the data files. */
+    static final String DATA_DIRECTORY_PROPERTY = "data.dir";
+
+    /**
+     * The directory holding the data files, their sidecars and the charts: the
+     * {@value #DATA_DIRECTORY_PROPERTY} system property, or "assignment/data" if it is not set.
+     */
+    static final String DATA_DIRECTORY = System.getProperty(DATA_DIRECTORY_PROPERTY, "assignment/data");
+
+    /**
+     * How often the changes to a file are forced to the storage device. Forcing makes a change
+     * survive a power failure or an operating system crash, at the cost of waiting for the disk.
+     */
+    enum Durability {
+        /** Never forced; the operating system writes the data back when it chooses. */
+        NONE,
+        /**
+         * Forced once per change: at the end of every append, delete or update call, and before a
+         * rewritten file replaces the data file. {@link #append(List)} forces once for all of its
+         * records.
+         */
+        PER_BATCH,
+        /** Forced after every record written, including each record of a batch update. */
+        PER_WRITE
+    }
+
+    /** Background thread that compacts files after deletes. */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "record-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The products data file, keyed by "pro_id". */
+    static final RecordFile PRODUCTS = new RecordFile(DATA_DIRECTORY + "/products.txt", "pro_id");
+
+    /** The orders data file, keyed by "order_id" and indexed by "user_id". */
+    static final RecordFile ORDERS = new RecordFile(DATA_DIRECTORY + "/orders.txt", "order_id", "user_id");
+
+    /** The users data file, keyed by "user_id" and indexed by "user_name". */
+    static final RecordFile USERS = new RecordFile(DATA_DIRECTORY + "/users.txt", "user_id", "user_name");
+
+    /**
+     * Callback used by {@link #scan(RecordVisitor)} for every non-blank line of the file.
+     */
+    interface RecordVisitor {
+        /**
+         * Receives one record.
+         *
+         * @param offset the byte offset of the first character of the line.
+         * @param length the length of the line in bytes, excluding the line terminator.
+         * @param line   the decoded line.
+         * @return true to continue scanning, false to stop.
+         */
+        boolean visit(long offset, int length, String line);
+    }
+
+    /**
+     * Callback used by {@link #scanRaw(long, RawRecordVisitor)} for every live line of the file,
+     * before the line is decoded to text.
+     */
+    interface RawRecordVisitor {
+        /**
+         * Receives one record as UTF-8 bytes. The buffer is reused for the next line, so the
+         * visitor must copy anything it keeps.
+         *
+         * @param offset the byte offset of the first character of the line.
+         * @param buffer the buffer holding the line, starting at index 0.
+         * @param length the length of the line in bytes, excluding the line terminator.
+         * @return true to continue scanning, false to stop.
+         */
+        boolean visit(long offset, byte[] buffer, int length);
+    }
+
+    /**
+     * Streams the new contents of a file for {@link #replace(ContentWriter)}.
+     */
+    interface ContentWriter {
+        /**
+         * Writes the records.
+         *
+         * @param out the buffered stream to write the UTF-8 encoded records to.
+         * @throws IOException if the records cannot be written.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * A structure derived from the file's contents that must follow appends and rewrites.
+     */
+    interface ChangeListener {
+        /**
+         * Called after a record has been appended to the file.
+         *
+         * @param previousSize     the size of the data file before the append.
+         * @param previousModified the modification time of the data file before the append.
+         * @param offset           the byte offset of the new record.
+         * @param length           the length of the new record in bytes.
+         * @param line             the new record.
+         */
+        void recordAppended(long previousSize, long previousModified, long offset, int length, String line);
+
+        /**
+         * Called after a record has been overwritten in place by a new version of the same length
+         * that leaves every indexed field unchanged. The size of the file is unchanged.
+         *
+         * @param previousModified the modification time of the data file before the write.
+         * @param offset           the byte offset of the record.
+         * @param length           the length of the record in bytes.
+         * @param previousLine     the record before the write.
+         * @param line             the record as written, including any padding.
+         */
+        void recordPatched(long previousModified, long offset, int length, String previousLine, String line);
+
+        /**
+         * Called once for every live record that an appended tombstone deleted, after
+         * {@link #recordAppended} has been called for the tombstone itself. The record is still on
+         * disk, but scans already skip it.
+         *
+         * @param offset the byte offset of the deleted record.
+         * @param length the length of the deleted record in bytes.
+         */
+        void recordDeleted(long offset, int length);
+
+        /**
+         * Called after the file has been changed in a way that cannot be followed incrementally.
+         */
+        void invalidate();
+    }
+
+    /** The data file on disk. */
+    private final File file;
+
+    /** Index over the file's primary key. */
+    private final RecordIndex primaryIndex;
+
+    /** Indexes built on this file. */
+    private final List<RecordIndex> indexes = new ArrayList<>();
+
+    /** Everything that must be told about appends and rewrites, including the indexes. */
+    private final List<ChangeListener> listeners = new ArrayList<>();
+
+    /** Garbage ratio above which a delete schedules a background compaction. */
+    private volatile double compactionThreshold = Double.parseDouble(System.getProperty(COMPACTION_THRESHOLD_PROPERTY, "0.3"));
+
+    /** How often changes to the file are forced to the disk. */
+    private final Durability durability;
+
+    /** Whether a background compaction has been scheduled and not yet finished. */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /** Shared by readers of the file and its indexes; held exclusively by changes to the file. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs a record file with a primary-key index and optional secondary indexes.
+     * <p>
+     * The index sidecars sit next to the data file and are named after it without its ".txt"
+     * extension: "users.idx" for the primary key of "users.txt" and "users.user_name.idx" for its
+     * "user_name" index.
+     * </p>
+     *
+     * @param path          the path of the data file.
+     * @param primaryKey    the JSON field that identifies a record and that tombstones refer to.
+     * @param secondaryKeys JSON fields to index without a uniqueness constraint.
+     */
+    private RecordFile(String path, String primaryKey, String... secondaryKeys) {
+        this.file = new File(path);
+        String base = path.replaceFirst("\\.txt$", "");
+        this.primaryIndex = new RecordIndex(this, primaryKey, true, new File(base + ".idx"));
+        indexes.add(primaryIndex);
+        for (String secondaryKey : secondaryKeys) {
+            indexes.add(new RecordIndex(this, secondaryKey, false, new File(base + "." + secondaryKey + ".idx")));
+        }
+        listeners.addAll(indexes);
+        this.durability = Durability.valueOf(System.getProperty(DURABILITY_PROPERTY + "." + file.getName(),
+                System.getProperty(DURABILITY_PROPERTY, Durability.NONE.name())));
+        // A temporary file is only left behind by a rewrite that crashed before its move.
+        new File(path + ".tmp").delete();
+    }
+
+    /**
+     * Creates a page table over this file and keeps it up to date with later changes.
+     *
+     * @param pageSize the number of records per page.
+     * @param filter   selects the records that are paged, or null to page every record.
+     * @return the new {@link PageTable}.
+     */
+    PageTable addPageTable(int pageSize, Predicate<String> filter) {
+        PageTable pageTable = new PageTable(this, pageSize, filter);
+        lock.writeLock().lock();
+        try {
+            listeners.add(pageTable);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return pageTable;
+    }
+
+    /**
+     * Creates a Bloom filter over one field of this file and keeps it up to date with later changes.
+     *
+     * @param keyField the field whose values are filtered.
+     * @return the new {@link KeyFilter}.
+     */
+    KeyFilter addKeyFilter(String keyField) {
+        KeyFilter keyFilter = new KeyFilter(this, keyField);
+        lock.writeLock().lock();
+        try {
+            listeners.add(keyFilter);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return keyFilter;
+    }
+
+    /**
+     * Creates a store of sessions keyed by this file's primary key, whose sessions are dropped
+     * when their records are superseded or moved.
+     *
+     * @return the new {@link SessionStore}.
+     */
+    SessionStore addSessionStore() {
+        SessionStore sessionStore = new SessionStore(primaryIndex.getKeyField());
+        lock.writeLock().lock();
+        try {
+            listeners.add(sessionStore);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return sessionStore;
+    }
+
+    /**
+     * Returns the shared lock for reading the file.
+     * <p>
+     * The methods of this class take it themselves; a caller only needs it to keep several
+     * reads consistent with each other, such as an index lookup and the reads it leads to.
+     * </p>
+     *
+     * @return the read lock.
+     */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * Returns the exclusive lock for changing the file.
+     * <p>
+     * The methods of this class take it themselves; a caller only needs it to make a read
+     * followed by a write atomic, such as a check for an existing record before an append.
+     * </p>
+     *
+     * @return the write lock.
+     */
+    Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * Returns the data file.
+     *
+     * @return the underlying {@link File}.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the index over this file's primary key.
+     *
+     * @return the primary-key {@link RecordIndex}.
+     */
+    RecordIndex getPrimaryIndex() {
+        return primaryIndex;
+    }
+
+    /**
+     * Returns the index built on the given field.
+     *
+     * @param keyField the indexed JSON field.
+     * @return the matching {@link RecordIndex}, or null if the field is not indexed.
+     */
+    RecordIndex getIndex(String keyField) {
+        for (RecordIndex index : indexes) {
+            if (index.getKeyField().equals(keyField)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the record with the given primary key using the sidecar index.
+     *
+     * @param key the primary key value.
+     * @return the record line, or null if no record has this key.
+     * @throws IOException if the data file cannot be read.
+     */
+    String readRecord(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            RecordIndex.Slot slot = primaryIndex.lookup(key);
+            return slot == null ? null : readAt(slot.offset, slot.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a single record with one positioned read.
+     *
+     * @param offset the byte offset of the record.
+     * @param length the length of the record in bytes.
+     * @return the decoded record line.
+     * @throws IOException if the data file cannot be read.
+     */
+    String readAt(long offset, int length) throws IOException {
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) break;
+            }
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads several records through one channel, in the order given.
+     *
+     * @param slots the positions of the records to read.
+     * @return the decoded record lines.
+     * @throws IOException if the data file cannot be read.
+     */
+    List<String> readAll(List<RecordIndex.Slot> slots) throws IOException {
+        List<String> lines = new ArrayList<>(slots.size());
+        if (slots.isEmpty()) return lines;
+        lock.readLock().lock();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (RecordIndex.Slot slot : slots) {
+                ByteBuffer buffer = ByteBuffer.allocate(slot.length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, slot.offset + buffer.position()) < 0) break;
+                }
+                lines.add(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return lines;
+    }
+
+    /**
+     * Sets the garbage ratio above which deletes trigger a background compaction.
+     *
+     * @param threshold the share of the file, between 0 and 1, that may be garbage.
+     */
+    void setCompactionThreshold(double threshold) {
+        this.compactionThreshold = threshold;
+    }
+
+    /**
+     * Returns the share of the file taken up by deleted records and tombstones.
+     *
+     * @return the garbage ratio, between 0 and 1.
+     * @throws IOException if the primary index has to be rebuilt and the data file cannot be read.
+     */
+    double getGarbageRatio() throws IOException {
+        lock.readLock().lock();
+        try {
+            long length = file.length();
+            return length == 0 ? 0 : Math.min(1.0, (double) primaryIndex.getGarbageBytes() / length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every live record of the file in order.
+     *
+     * @return the record lines.
+     * @throws IOException if the data file cannot be read.
+     */
+    List<String> readLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        scan((offset, length, line) -> lines.add(line));
+        return lines;
+    }
+
+    /**
+     * Visits every live line of the file in order together with its byte position.
+     *
+     * @param visitor the callback receiving each record.
+     * @throws IOException if the data file cannot be read.
+     */
+    void scan(RecordVisitor visitor) throws IOException {
+        scan(0, visitor);
+    }
+
+    /**
+     * Visits the live lines of the file starting at the given byte offset, until the visitor
+     * asks to stop or the end of the file is reached. Deleted records and tombstones are skipped.
+     *
+     * @param fromOffset the byte offset of the first line to visit; must be the start of a line.
+     * @param visitor    the callback receiving each record.
+     * @throws IOException if the data file cannot be read.
+     */
+    void scan(long fromOffset, RecordVisitor visitor) throws IOException {
+        scanRaw(fromOffset, (offset, buffer, length) ->
+                visitor.visit(offset, length, new String(buffer, 0, length, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Visits the live lines of the file as raw bytes, starting at the given byte offset, until
+     * the visitor asks to stop or the end of the file is reached. Callers that decode records
+     * straight from bytes avoid building a string for every line.
+     *
+     * @param fromOffset the byte offset of the first line to visit; must be the start of a line.
+     * @param visitor    the callback receiving each record.
+     * @throws IOException if the data file cannot be read.
+     */
+    void scanRaw(long fromOffset, RawRecordVisitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            Set<Long> garbage = primaryIndex.getGarbage();
+            scanStored(fromOffset, (offset, buffer, length) ->
+                    garbage.contains(offset) || visitor.visit(offset, buffer, length));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every non-blank line stored in the file, including deleted records and tombstones.
+     * This is what the indexes are built from.
+     *
+     * @param fromOffset the byte offset of the first line to visit; must be the start of a line.
+     * @param visitor    the callback receiving each line.
+     * @throws IOException if the data file cannot be read.
+     */
+    void scanStored(long fromOffset, RawRecordVisitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (file.exists()) {
+                scanLines(fromOffset, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits the file into lines for {@link #scanStored(long, RawRecordVisitor)}. The caller holds the lock.
+     */
+    private void scanLines(long fromOffset, RawRecordVisitor visitor) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(fromOffset);
+            byte[] chunk = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long lineStart = fromOffset;
+            long position = fromOffset;
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (b == '\n') {
+                        if (!emit(visitor, lineStart, line, lineLength)) return;
+                        lineLength = 0;
+                        lineStart = position + i + 1;
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, lineLength * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+                position += read;
+            }
+            emit(visitor, lineStart, line, lineLength);
+        }
+    }
+
+    /**
+     * Hands a completed line to the visitor, dropping a trailing carriage return and skipping blank lines.
+     *
+     * @return false if the visitor asked to stop.
+     */
+    private static boolean emit(RawRecordVisitor visitor, long offset, byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        for (int i = 0; i < length; i++) {
+            // Same test as String.trim(): any byte above a space means the line is not blank.
+            if ((line[i] & 0xFF) > ' ') {
+                return visitor.visit(offset, line, length);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends a record to the end of the file and registers it with every index.
+     * <p>
+     * If the file does not end with a line terminator, one is written first so the new
+     * record starts on its own line.
+     * </p>
+     *
+     * @param line the JSON record, without a line terminator.
+     * @return the byte offset at which the record was written.
+     * @throws IOException if the data file cannot be written.
+     */
+    long append(String line) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long offset = appendRecord(line);
+            forceBatch();
+            return offset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends records to the end of the file, in order, and registers them with every index.
+     * <p>
+     * The records are written under one write lock and, with {@link Durability#PER_BATCH}, forced
+     * to the disk once at the end rather than once per record.
+     * </p>
+     *
+     * @param lines the JSON records, without line terminators.
+     * @throws IOException if the data file cannot be written.
+     */
+    void append(List<String> lines) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (String line : lines) {
+                appendRecord(line);
+            }
+            forceBatch();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes one record at the end of the file and tells the listeners. The caller holds the write lock.
+     */
+    private long appendRecord(String line) throws IOException {
+        // The records a tombstone deletes are looked up while the primary index still holds them.
+        String deletedKey = RecordCodec.isTombstone(line) ? RecordCodec.tombstoneKey(line) : null;
+        List<RecordIndex.Slot> deleted = deletedKey == null
+                ? Collections.emptyList() : primaryIndex.lookupAll(deletedKey);
+        byte[] record = line.getBytes(StandardCharsets.UTF_8);
+        byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        long previousModified = file.lastModified();
+        long previousSize;
+        long offset;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            previousSize = channel.size();
+            offset = previousSize;
+            if (offset > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, offset - 1);
+                if (last.get(0) != '\n') {
+                    writeFully(channel, ByteBuffer.wrap(separator), offset);
+                    offset += separator.length;
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(record.length + separator.length);
+            buffer.put(record).put(separator).flip();
+            writeFully(channel, buffer, offset);
+            if (durability == Durability.PER_WRITE) {
+                channel.force(false);
+            }
+        }
+        for (ChangeListener listener : listeners) {
+            listener.recordAppended(previousSize, previousModified, offset, record.length, line);
+        }
+        for (RecordIndex.Slot slot : deleted) {
+            for (ChangeListener listener : listeners) {
+                listener.recordDeleted(slot.offset, slot.length);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Replaces the whole file with the given records.
+     * <p>
+     * The records are written to a temporary file which then replaces the data file, so a crash
+     * part-way through leaves the old contents in place.
+     * </p>
+     *
+     * @param lines the records to write, in order.
+     * @throws IOException if the data file cannot be written.
+     */
+    void rewrite(List<String> lines) throws IOException {
+        lock.writeLock().lock();
+        try {
+            byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+            replaceContents(out -> {
+                for (String line : lines) {
+                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    out.write(separator);
+                }
+            });
+        } finally {
+            try {
+                invalidateIndexes();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Deletes every live record with the given primary key by appending a tombstone.
+     * <p>
+     * The file is not rewritten; the records stay on disk as garbage until it is compacted. If the
+     * garbage ratio passes the compaction threshold, a compaction is scheduled in the background.
+     * </p>
+     *
+     * @param key the primary key of the record to delete.
+     * @return true if a live record had this key; false if there was nothing to delete.
+     * @throws IOException if the data file cannot be read or written.
+     */
+    boolean delete(String key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (primaryIndex.lookup(key) == null) {
+                return false;
+            }
+            appendRecord(RecordCodec.encodeTombstone(key));
+            forceBatch();
+            scheduleCompaction();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the record with the given primary key by a new version.
+     *
+     * @param key  the primary key of the record.
+     * @param line the new version, which must carry the same primary key.
+     * @return true if a live record had this key; false if there was nothing to replace.
+     * @throws IOException if the data file cannot be read or written.
+     * @see #update(Map)
+     */
+    boolean update(String key, String line) throws IOException {
+        return update(Collections.singletonMap(key, line)) > 0;
+    }
+
+    /**
+     * Replaces records by new versions, without rewriting the file.
+     * <p>
+     * The records are looked up in the primary index and read in file order. A new version that
+     * fits within the bytes of the old one and leaves every indexed field unchanged is written
+     * over it, padded with spaces, so the record keeps its position. Any other new version is
+     * appended after a tombstone for its key, which retires the old one, and the record moves to
+     * the end of the file. The file is changed under one write lock, so readers see either none of
+     * the updates or all of them. As with {@link #delete(String)}, a compaction is scheduled in the
+     * background once the garbage ratio passes the threshold. New versions are stripped first, so
+     * the padding of an earlier in-place write never travels with a record that is appended.
+     * </p>
+     *
+     * @param records the new version of each record by primary key; each must carry its key.
+     * @return the number of records replaced; keys with no live record are skipped.
+     * @throws IOException if the data file cannot be read or written.
+     */
+    int update(Map<String, String> records) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Map<String, RecordIndex.Slot> slotsByKey = new HashMap<>();
+            for (String key : records.keySet()) {
+                RecordIndex.Slot slot = primaryIndex.lookup(key);
+                if (slot != null) {
+                    slotsByKey.put(key, slot);
+                }
+            }
+            // One pass through the file, in order, instead of a seek per key.
+            List<String> keys = new ArrayList<>(slotsByKey.keySet());
+            keys.sort(Comparator.comparingLong(key -> slotsByKey.get(key).offset));
+            List<RecordIndex.Slot> slots = new ArrayList<>();
+            for (String key : keys) {
+                slots.add(slotsByKey.get(key));
+            }
+            List<String> current = readAll(slots);
+            List<String> moved = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < slots.size(); i++) {
+                    RecordIndex.Slot slot = slots.get(i);
+                    String previousLine = current.get(i);
+                    String line = records.get(keys.get(i)).strip();
+                    byte[] record = line.getBytes(StandardCharsets.UTF_8);
+                    if (record.length > slot.length || !sameIndexedFields(previousLine, line)) {
+                        moved.add(keys.get(i));
+                        continue;
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(slot.length);
+                    buffer.put(record);
+                    while (buffer.hasRemaining()) {
+                        buffer.put((byte) ' ');
+                    }
+                    buffer.flip();
+                    long previousModified = file.lastModified();
+                    writeFully(channel, buffer, slot.offset);
+                    if (durability == Durability.PER_WRITE) {
+                        channel.force(false);
+                    }
+                    String patched = new String(buffer.array(), StandardCharsets.UTF_8);
+                    for (ChangeListener listener : listeners) {
+                        listener.recordPatched(previousModified, slot.offset, slot.length, previousLine, patched);
+                    }
+                }
+            }
+            for (String key : moved) {
+                appendRecord(RecordCodec.encodeTombstone(key));
+                appendRecord(records.get(key).strip());
+            }
+            forceBatch();
+            if (!moved.isEmpty()) {
+                scheduleCompaction();
+            }
+            return slots.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks that two versions of a record agree on every field an index is built on.
+     */
+    private boolean sameIndexedFields(String previousLine, String line) {
+        try {
+            for (RecordIndex index : indexes) {
+                String field = index.getKeyField();
+                if (!Objects.equals(RecordCodec.extractField(previousLine, field), RecordCodec.extractField(line, field))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Schedules a background compaction if the garbage ratio has passed the threshold and none is
+     * pending.
+     */
+    private void scheduleCompaction() throws IOException {
+        if (getGarbageRatio() > compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Error compacting " + file.getPath() + ": " + e.getMessage());
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the file without its deleted records and tombstones.
+     * <p>
+     * The live records are copied to a temporary file which then replaces the data file, so a
+     * reader never sees a half-written file and an interrupted compaction leaves the data intact.
+     * The spaces that pad records written over in place are dropped on the way.
+     * </p>
+     *
+     * @return the number of bytes reclaimed.
+     * @throws IOException if the data file cannot be read or replaced.
+     */
+    long compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Set<Long> garbage = primaryIndex.getGarbage();
+            if (garbage.isEmpty()) {
+                return 0;
+            }
+            long before = file.length();
+            byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+            replaceContents(out -> {
+                try {
+                    scanStored(0, (offset, buffer, length) -> {
+                        if (!garbage.contains(offset)) {
+                            int end = length;
+                            while (end > 0 && buffer[end - 1] == ' ') {
+                                end--;
+                            }
+                            try {
+                                out.write(buffer, 0, end);
+                                out.write(separator);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        return true;
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            });
+            long reclaimed = before - file.length();
+            invalidateIndexes();
+            return reclaimed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole file with content streamed by the caller.
+     * <p>
+     * Unlike {@link #rewrite(List)} the records are never held in memory together, so this suits
+     * very large files. The content is written to a temporary file which then replaces the data
+     * file, so readers never see a half-written file.
+     * </p>
+     *
+     * @param content writes the new records, each followed by {@link System#lineSeparator()}.
+     * @throws IOException if the content cannot be written or the data file cannot be replaced.
+     */
+    void replace(ContentWriter content) throws IOException {
+        lock.writeLock().lock();
+        try {
+            replaceContents(content);
+        } finally {
+            try {
+                invalidateIndexes();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes new content to a temporary file and moves it over the data file. The caller holds
+     * the write lock and tells the listeners afterwards.
+     * <p>
+     * Unless the durability is {@link Durability#NONE}, the temporary file is forced before the
+     * move and the directory after it, so the new contents are on disk before the old ones go
+     * and the move itself survives a crash.
+     * </p>
+     */
+    private void replaceContents(ContentWriter content) throws IOException {
+        File replacement = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(replacement, false);
+             OutputStream out = new BufferedOutputStream(fileOut, 1 << 16)) {
+            content.writeTo(out);
+            out.flush();
+            if (durability != Durability.NONE) {
+                fileOut.getChannel().force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            replacement.delete();
+            throw e;
+        }
+        try {
+            Files.move(replacement.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (durability != Durability.NONE) {
+            forceDirectory();
+        }
+    }
+
+    /**
+     * Forces the appends and in-place writes of the change that just finished, when the
+     * durability is {@link Durability#PER_BATCH}. The caller holds the write lock.
+     */
+    private void forceBatch() throws IOException {
+        if (durability == Durability.PER_BATCH && file.exists()) {
+            // Forcing any channel of the file flushes every write made to it, not just this channel's.
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Forces the directory entry of the data file, so that a move over it is not lost in a crash.
+     * Some platforms cannot open a directory for this; the move is then as durable as they allow.
+     */
+    private void forceDirectory() {
+        File directory = file.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here, for example on Windows.
+        }
+    }
+
+    /**
+     * Empties the file.
+     *
+     * @throws IOException if the data file cannot be truncated.
+     */
+    void truncate() throws IOException {
+        lock.writeLock().lock();
+        try {
+            // Moving an empty file over the data file never leaves it half-truncated.
+            replaceContents(out -> { });
+        } finally {
+            try {
+                invalidateIndexes();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Marks every index and page table on this file as stale after a change made outside
+     * {@link #append(String)}.
+     */
+    void invalidateIndexes() {
+        lock.writeLock().lock();
+        try {
+            for (ChangeListener listener : listeners) {
+                listener.invalidate();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the whole buffer at the given position.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
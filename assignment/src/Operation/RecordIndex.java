@@ -0,0 +1,541 @@
+package Operation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The {@code RecordIndex} class maps a field of a {@link RecordFile} to the byte positions
+ * of the records that hold each value.
+ * <p>
+ * Every record for a key is kept in file order, so the records for one key can be read without
+ * touching the others; {@link #lookup(String)} returns the first, which is what a top-down scan
+ * of the file would find.
+ * </p>
+ * <p>
+ * The primary-key index also follows deletes. A tombstone record retires every earlier record
+ * with its key, and the retired records and the tombstones themselves are tracked as garbage
+ * until the file is compacted. Secondary indexes leave out the records the primary index has
+ * retired.
+ * </p>
+ * <p>
+ * The index is persisted in a sidecar file next to the data file. The sidecar header stores the
+ * size and modification time of the data file it describes; when they no longer match, or the
+ * sidecar is missing or damaged, the index is rebuilt with one scan of the data file. Appends
+ * made through {@link RecordFile#append(String)} are added to the sidecar without a rebuild.
+ * </p>
+ */
+final class RecordIndex implements RecordFile.ChangeListener {
+
+    /** Marker written at the start of every sidecar file. */
+    private static final int MAGIC = 0x52494459;
+
+    /** Byte position of the data file size within the sidecar header. */
+    private static final long HEADER_STATE_POSITION = 4;
+
+    /** Length in bytes of the line terminator that {@link RecordFile} writes after every record. */
+    private static final int SEPARATOR_LENGTH = System.lineSeparator().getBytes(StandardCharsets.UTF_8).length;
+
+    /**
+     * The position of a single record inside the data file.
+     */
+    static final class Slot {
+        /** Byte offset of the first character of the record. */
+        final long offset;
+        /** Length of the record in bytes, excluding the line terminator. */
+        final int length;
+        /** The previous record with the same key, or null. */
+        Slot previous;
+
+        Slot(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /** The data file this index describes. */
+    private final RecordFile recordFile;
+
+    /** The JSON field whose value is indexed. */
+    private final String keyField;
+
+    /** Whether this is the primary-key index, which follows tombstones. */
+    private final boolean primary;
+
+    /** The sidecar file holding the persisted index. */
+    private final File indexFile;
+
+    /**
+     * Live record positions keyed by the indexed value, or null when not loaded. The mapped slot is
+     * the latest record and earlier ones are reached through {@link Slot#previous}.
+     */
+    private Map<String, Slot> slots;
+
+    /**
+     * Lengths of retired records and tombstones keyed by offset; only kept by the primary index.
+     * The map is replaced rather than modified once published, so callers may hold on to it.
+     */
+    private Map<Long, Integer> garbage = Collections.emptyMap();
+
+    /** Total size in bytes of the lines in {@link #garbage}, including line terminators. */
+    private long garbageBytes;
+
+    /** Size of the data file that {@link #slots} describes. */
+    private long dataLength;
+
+    /** Modification time of the data file that {@link #slots} describes. */
+    private long dataModified;
+
+    /**
+     * Constructs an index over one field of a record file.
+     *
+     * @param recordFile the data file being indexed.
+     * @param keyField   the JSON field whose value is the key.
+     * @param primary    true for the primary-key index, which follows tombstones.
+     * @param indexFile  the sidecar file used to persist the index.
+     */
+    RecordIndex(RecordFile recordFile, String keyField, boolean primary, File indexFile) {
+        this.recordFile = recordFile;
+        this.keyField = keyField;
+        this.primary = primary;
+        this.indexFile = indexFile;
+        // A temporary sidecar is only left behind by a save that crashed before its move.
+        new File(indexFile.getPath() + ".tmp").delete();
+    }
+
+    /**
+     * Returns the JSON field this index is built on.
+     *
+     * @return the indexed field name.
+     */
+    String getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * Returns the position of the first live record with the given key.
+     *
+     * @param key the key value to look up.
+     * @return the record's {@link Slot}, or null if no record has this key.
+     * @throws IOException if the index has to be rebuilt and the data file cannot be read.
+     */
+    Slot lookup(String key) throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                Slot slot = slots.get(key);
+                while (slot != null && slot.previous != null) {
+                    slot = slot.previous;
+                }
+                return slot;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the positions of every live record with the given key, in file order.
+     *
+     * @param key the key value to look up.
+     * @return the matching slots; empty if no record has this key.
+     * @throws IOException if an index has to be rebuilt and the data file cannot be read.
+     */
+    List<Slot> lookupAll(String key) throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                Set<Long> retired = primary ? Collections.emptySet() : recordFile.getPrimaryIndex().getGarbage();
+                List<Slot> matches = new ArrayList<>();
+                for (Slot slot = slots.get(key); slot != null; slot = slot.previous) {
+                    if (!retired.contains(slot.offset)) {
+                        matches.add(slot);
+                    }
+                }
+                Collections.reverse(matches);
+                return matches;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the offsets of the lines that compaction would drop: retired records and tombstones.
+     * Only the primary-key index tracks garbage; other indexes return an empty set.
+     *
+     * @return an unmodifiable set of byte offsets.
+     * @throws IOException if the index has to be rebuilt and the data file cannot be read.
+     */
+    Set<Long> getGarbage() throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                return Collections.unmodifiableSet(garbage.keySet());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes that compaction would reclaim.
+     *
+     * @return the total size of the garbage lines, including line terminators.
+     * @throws IOException if the index has to be rebuilt and the data file cannot be read.
+     */
+    long getGarbageBytes() throws IOException {
+        Lock lock = recordFile.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                ensureCurrent();
+                return garbageBytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a record that was just appended to the data file.
+     * <p>
+     * The entry is only added when the index described the file exactly as it was before the
+     * append; otherwise the index is marked stale and rebuilt on the next lookup.
+     * </p>
+     *
+     * @param previousSize     the size of the data file before the append.
+     * @param previousModified the modification time of the data file before the append.
+     * @param offset           the byte offset of the new record.
+     * @param length           the length of the new record in bytes.
+     * @param line             the new record.
+     */
+    @Override
+    public synchronized void recordAppended(long previousSize, long previousModified, long offset, int length, String line) {
+        if (slots == null) {
+            // A sidecar left by an earlier run may still describe the file as it was before the append.
+            load(previousSize, previousModified);
+        }
+        if (slots == null || previousSize != dataLength || previousModified != dataModified) {
+            invalidate();
+            return;
+        }
+        File dataFile = recordFile.getFile();
+        dataLength = dataFile.length();
+        dataModified = dataFile.lastModified();
+        String key;
+        int entryLength;
+        if (RecordCodec.isTombstone(line)) {
+            if (!primary) {
+                key = null;
+                entryLength = 0;
+            } else {
+                key = RecordCodec.tombstoneKey(line);
+                entryLength = -length - 1;
+                // Copy the published set, then retire the key's records and the tombstone itself.
+                Map<Long, Integer> next = new HashMap<>(garbage);
+                retire(next, key == null ? "" : key, offset, length);
+                garbage = next;
+                if (key == null) key = "";
+            }
+        } else {
+            key = extractKey(line);
+            entryLength = length;
+            if (key != null) {
+                put(slots, key, new Slot(offset, length));
+            }
+        }
+        if (!indexFile.exists()) {
+            save();
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(indexFile, "rw")) {
+            if (key != null) {
+                out.seek(out.length());
+                out.writeUTF(key);
+                out.writeLong(offset);
+                out.writeInt(entryLength);
+            }
+            out.seek(HEADER_STATE_POSITION);
+            out.writeLong(dataLength);
+            out.writeLong(dataModified);
+        } catch (IOException e) {
+            System.err.println("Error updating index file: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    /**
+     * Follows a record that was overwritten in place. Its position and its key are unchanged, so
+     * only the file state the index describes moves on.
+     *
+     * @param previousModified the modification time of the data file before the write.
+     * @param offset           the byte offset of the record.
+     * @param length           the length of the record in bytes.
+     * @param previousLine     the record before the write.
+     * @param line             the record as written.
+     */
+    @Override
+    public synchronized void recordPatched(long previousModified, long offset, int length, String previousLine, String line) {
+        File dataFile = recordFile.getFile();
+        if (slots == null) {
+            load(dataFile.length(), previousModified);
+        }
+        if (slots == null || dataLength != dataFile.length() || previousModified != dataModified) {
+            invalidate();
+            return;
+        }
+        dataModified = dataFile.lastModified();
+        if (!indexFile.exists()) {
+            save();
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(indexFile, "rw")) {
+            out.seek(HEADER_STATE_POSITION);
+            out.writeLong(dataLength);
+            out.writeLong(dataModified);
+        } catch (IOException e) {
+            System.err.println("Error updating index file: " + e.getMessage());
+            invalidate();
+        }
+    }
+
+    /**
+     * Nothing to do: the tombstone already retired the deleted record when it was appended.
+     */
+    @Override
+    public void recordDeleted(long offset, int length) {
+    }
+
+    /**
+     * Discards the index so that it is rebuilt from the data file on the next lookup.
+     */
+    @Override
+    public synchronized void invalidate() {
+        slots = null;
+        garbage = Collections.emptyMap();
+        garbageBytes = 0;
+        indexFile.delete();
+    }
+
+    /**
+     * Adds a slot as the latest record for a key.
+     */
+    private static void put(Map<String, Slot> target, String key, Slot slot) {
+        slot.previous = target.get(key);
+        target.put(key, slot);
+    }
+
+    /**
+     * Records a garbage line. If {@code key} is not empty the line is a tombstone, and every
+     * earlier record with that key is retired as well.
+     *
+     * @param target the garbage map being built.
+     * @param key    the key the tombstone deletes, or an empty string for a plain garbage line.
+     * @param offset the byte offset of the garbage line.
+     * @param length the length of the garbage line in bytes.
+     */
+    private void retire(Map<Long, Integer> target, String key, long offset, int length) {
+        if (!key.isEmpty()) {
+            for (Slot slot = slots.remove(key); slot != null; slot = slot.previous) {
+                target.put(slot.offset, slot.length);
+                garbageBytes += slot.length + SEPARATOR_LENGTH;
+            }
+        }
+        target.put(offset, length);
+        garbageBytes += length + SEPARATOR_LENGTH;
+    }
+
+    /**
+     * Makes sure {@link #slots} describes the current data file, loading or rebuilding it if needed.
+     */
+    private void ensureCurrent() throws IOException {
+        File dataFile = recordFile.getFile();
+        if (slots != null && dataLength == dataFile.length() && dataModified == dataFile.lastModified()) {
+            return;
+        }
+        if (!load(dataFile.length(), dataFile.lastModified())) {
+            rebuild(dataFile);
+        }
+    }
+
+    /**
+     * Loads the sidecar file if it exists and describes a data file of the expected state.
+     *
+     * @return true if the index was loaded.
+     */
+    private boolean load(long expectedLength, long expectedModified) {
+        if (!indexFile.exists()) return false;
+        slots = new HashMap<>();
+        Map<Long, Integer> loadedGarbage = new HashMap<>();
+        garbageBytes = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                slots = null;
+                return false;
+            }
+            long length = in.readLong();
+            long modified = in.readLong();
+            if (length != expectedLength || modified != expectedModified) {
+                slots = null;
+                return false;
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException end) {
+                    break;
+                }
+                long offset = in.readLong();
+                int recordLength = in.readInt();
+                if (recordLength < 0) {
+                    // A negative length marks a garbage line; a key with it marks a tombstone.
+                    retire(loadedGarbage, key, offset, -recordLength - 1);
+                } else {
+                    put(slots, key, new Slot(offset, recordLength));
+                }
+            }
+            garbage = loadedGarbage;
+            dataLength = length;
+            dataModified = modified;
+            return true;
+        } catch (IOException e) {
+            // A truncated or unreadable sidecar is simply rebuilt.
+            slots = null;
+            return false;
+        }
+    }
+
+    /**
+     * Rebuilds the index with one scan of the data file and writes a fresh sidecar.
+     */
+    private void rebuild(File dataFile) throws IOException {
+        long length = dataFile.length();
+        long modified = dataFile.lastModified();
+        slots = new HashMap<>();
+        Map<Long, Integer> rebuiltGarbage = new HashMap<>();
+        garbageBytes = 0;
+        try {
+            recordFile.scanStored(0, (offset, buffer, recordLength) -> {
+                if (RecordCodec.isTombstone(buffer, recordLength)) {
+                    if (primary) {
+                        String key = RecordCodec.tombstoneKey(buffer, recordLength);
+                        retire(rebuiltGarbage, key == null ? "" : key, offset, recordLength);
+                    }
+                    return true;
+                }
+                String key = extractKey(buffer, recordLength);
+                if (key != null) {
+                    put(slots, key, new Slot(offset, recordLength));
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            slots = null;
+            throw e;
+        }
+        garbage = rebuiltGarbage;
+        dataLength = length;
+        dataModified = modified;
+        save();
+    }
+
+    /**
+     * Writes the whole index to the sidecar file, keeping each key's records in file order,
+     * followed by the garbage lines.
+     * <p>
+     * The index is written to a temporary file that then replaces the sidecar, so a crash
+     * part-way through never leaves a sidecar whose header is valid but whose entries are cut short.
+     * </p>
+     */
+    private void save() {
+        File replacement = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(replacement)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(dataLength);
+                out.writeLong(dataModified);
+                List<Slot> chain = new ArrayList<>();
+                for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+                    chain.clear();
+                    for (Slot slot = entry.getValue(); slot != null; slot = slot.previous) {
+                        chain.add(slot);
+                    }
+                    for (int i = chain.size() - 1; i >= 0; i--) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(chain.get(i).offset);
+                        out.writeInt(chain.get(i).length);
+                    }
+                }
+                // Garbage is written without its keys; the records it retired are not in the map any more.
+                for (Map.Entry<Long, Integer> line : garbage.entrySet()) {
+                    out.writeUTF("");
+                    out.writeLong(line.getKey());
+                    out.writeInt(-line.getValue() - 1);
+                }
+            }
+            try {
+                Files.move(replacement.toPath(), indexFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(replacement.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing index file: " + e.getMessage());
+            replacement.delete();
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Extracts the indexed field from a record.
+     *
+     * @return the key value, or null if the record cannot be parsed or has no such field.
+     */
+    private String extractKey(String line) {
+        try {
+            return RecordCodec.extractField(line, keyField);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the indexed field from a record held as UTF-8 bytes.
+     *
+     * @return the key value, or null if the record cannot be parsed or has no such field.
+     */
+    private String extractKey(byte[] buffer, int length) {
+        try {
+            return RecordCodec.extractField(buffer, 0, length, keyField);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package Operation;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.json.simple.parser.ParseException;
+
+import Model.Customer;
+
+/**
+ * The {@code SessionStore} class keeps the customers who are logged in, keyed by user ID.
+ * <p>
+ * Each session holds the fully decoded {@link Customer} together with the stored record and its
+ * byte position in the users file, so showing or updating the profile of a logged-in customer
+ * needs no read of the file. A session is dropped as soon as its record is superseded: an
+ * appended record with the same user ID, such as a tombstone, or a new version written over the
+ * record removes it, and a rewrite of the file, which moves every record, removes them all. A dropped session is hydrated again from the
+ * primary index on next use.
+ * </p>
+ */
+final class SessionStore implements RecordFile.ChangeListener {
+
+    /**
+     * A logged-in customer and the record it was decoded from.
+     */
+    static final class Session {
+        /** The decoded customer; the password stays encrypted. */
+        final Customer customer;
+        /** The stored record. */
+        final String record;
+        /** Byte offset of the record in the users file. */
+        final long offset;
+
+        Session(Customer customer, String record, long offset) {
+            this.customer = customer;
+            this.record = record;
+            this.offset = offset;
+        }
+    }
+
+    /** The primary-key field of the users file. */
+    private final String keyField;
+
+    /** Open sessions by user ID. */
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param keyField the primary-key field of the users file.
+     */
+    SessionStore(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * Returns the session of a user.
+     *
+     * @param userId the user's ID.
+     * @return the session, or null if the user has none.
+     */
+    synchronized Session get(String userId) {
+        return sessions.get(userId);
+    }
+
+    /**
+     * Opens or replaces the session of a customer.
+     *
+     * @param session the session.
+     */
+    synchronized void put(Session session) {
+        sessions.put(session.customer.getUserId(), session);
+    }
+
+    /**
+     * Closes the session of a user.
+     *
+     * @param userId the user's ID.
+     */
+    synchronized void remove(String userId) {
+        sessions.remove(userId);
+    }
+
+    @Override
+    public synchronized void recordAppended(long previousSize, long previousModified, long offset, int length, String line) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        String key;
+        if (RecordCodec.isTombstone(line)) {
+            key = RecordCodec.tombstoneKey(line);
+        } else {
+            try {
+                key = RecordCodec.extractField(line, keyField);
+            } catch (ParseException e) {
+                key = null;
+            }
+        }
+        if (key != null) {
+            sessions.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void recordPatched(long previousModified, long offset, int length, String previousLine, String line) {
+        try {
+            String key = RecordCodec.extractField(line, keyField);
+            if (key != null) {
+                sessions.remove(key);
+            }
+        } catch (ParseException e) {
+            // A record that cannot be parsed belongs to no session.
+        }
+    }
+
+    @Override
+    public void recordDeleted(long offset, int length) {
+        // The tombstone already closed the session in recordAppended.
+    }
+
+    @Override
+    public synchronized void invalidate() {
+        sessions.clear();
+    }
+}
@@ -0,0 +1,216 @@
+package Operation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The {@code SymbolTable} class maps strings that repeat across records, such as categories and
+ * the IDs that orders refer to, to one shared instance and a small int code.
+ * <p>
+ * Codes are handed out densely from 0 in order of first appearance and never change, so a count
+ * per symbol can be kept in an {@code int[]} indexed by code instead of a {@code Map}. The
+ * decoders in {@link RecordCodec} look values up straight from the record bytes: a value that is
+ * already known costs no allocation at all, and a new one is decoded once and kept.
+ * </p>
+ * <p>
+ * The table is an open-addressing hash of the codes, using the same hash as
+ * {@link String#hashCode()} so that a lookup by {@code String} and a lookup by ASCII bytes agree.
+ * Symbols are never removed; the tables hold the distinct values seen since the application
+ * started. All methods are thread-safe, and looking up a symbol that is already in the table takes
+ * no lock: the arrays are published through a volatile field and each slot is written with a
+ * volatile store after its symbol, so a reader that finds a slot also sees the symbol. Only
+ * adding a symbol is synchronized, and it re-checks the table under the lock.
+ * </p>
+ */
+final class SymbolTable {
+
+    /** Product categories. */
+    static final SymbolTable CATEGORIES = new SymbolTable();
+
+    /** Product IDs, shared by product and order records. */
+    static final SymbolTable PRODUCT_IDS = new SymbolTable();
+
+    /** User IDs, shared by user and order records. */
+    static final SymbolTable USER_IDS = new SymbolTable();
+
+    /**
+     * The symbols and their hash slots. A table is filled in place and replaced by a larger copy
+     * when it is half full.
+     */
+    private static final class Table {
+        /** The symbol of every code; entries below the table's size are set. */
+        final String[] symbols;
+        /** Hash slots holding a code plus one; 0 marks an empty slot. The length is a power of two. */
+        final AtomicIntegerArray slots;
+
+        Table(int capacity) {
+            this.symbols = new String[capacity];
+            this.slots = new AtomicIntegerArray(capacity * 2);
+        }
+
+        /**
+         * Returns the entry of a symbol: its code plus one, or 0 if it is not in the table.
+         * Safe without the lock, since each slot is read only once.
+         */
+        int entryOf(String symbol, int hash) {
+            int mask = slots.length() - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots.get(slot);
+                if (entry == 0 || symbols[entry - 1].equals(symbol)) {
+                    return entry;
+                }
+            }
+        }
+
+        /**
+         * Finds the slot holding the symbol, or the empty slot where it belongs. The caller holds
+         * the lock, so the slot cannot be taken between the search and the caller's use of it.
+         */
+        int slotOf(String symbol, int hash) {
+            int mask = slots.length() - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots.get(slot);
+                if (entry == 0 || symbols[entry - 1].equals(symbol)) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    /** The current table. */
+    private volatile Table table = new Table(64);
+
+    /** Number of symbols; written after the slot of the newest symbol. */
+    private volatile int size;
+
+    /**
+     * Returns the code of a symbol, adding the symbol if it is new.
+     *
+     * @param symbol the symbol.
+     * @return its code.
+     */
+    int code(String symbol) {
+        int code = find(symbol);
+        return code >= 0 ? code : add(symbol);
+    }
+
+    /**
+     * Returns the code of a symbol without adding it.
+     *
+     * @param symbol the symbol.
+     * @return its code, or -1 if the symbol is not in the table.
+     */
+    int find(String symbol) {
+        return table.entryOf(symbol, symbol.hashCode()) - 1;
+    }
+
+    /**
+     * Returns the shared instance of a symbol, adding the symbol if it is new.
+     *
+     * @param symbol the symbol; null is returned as it is.
+     * @return the shared instance.
+     */
+    String intern(String symbol) {
+        if (symbol == null) return null;
+        // Take the code first: adding a symbol may replace the table.
+        int code = code(symbol);
+        return symbol(code);
+    }
+
+    /**
+     * Returns the shared instance of a symbol given as UTF-8 bytes, adding the symbol if it is new.
+     *
+     * @param buffer the buffer holding the symbol.
+     * @param start  the index of its first byte.
+     * @param length its length in bytes.
+     * @return the shared instance.
+     */
+    String intern(byte[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            if (buffer[i] < 0) {
+                // Not ASCII: the bytes are not the characters, so go through a String.
+                return intern(new String(buffer, start, length, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + buffer[i];
+        }
+        Table current = table;
+        int mask = current.slots.length() - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = current.slots.get(slot);
+            if (entry == 0) {
+                // Not found: add it under the lock, which looks again in the latest table.
+                return symbol(add(new String(buffer, start, length, StandardCharsets.ISO_8859_1)));
+            }
+            String symbol = current.symbols[entry - 1];
+            if (matches(symbol, buffer, start, length)) {
+                return symbol;
+            }
+        }
+    }
+
+    /**
+     * Returns the symbol of a code.
+     *
+     * @param code a code handed out by this table.
+     * @return the symbol.
+     */
+    String symbol(int code) {
+        return table.symbols[code];
+    }
+
+    /**
+     * Returns the number of symbols, which is one more than the highest code.
+     *
+     * @return the symbol count.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a symbol unless another thread added it first, and returns its code.
+     */
+    private synchronized int add(String symbol) {
+        Table current = table;
+        int slot = current.slotOf(symbol, symbol.hashCode());
+        int entry = current.slots.get(slot);
+        if (entry != 0) {
+            return entry - 1;
+        }
+        int code = size;
+        if (code == current.symbols.length) {
+            // Keep the table at most half full so probe runs stay short.
+            Table larger = new Table(current.symbols.length * 2);
+            for (int c = 0; c < code; c++) {
+                larger.symbols[c] = current.symbols[c];
+                larger.slots.set(larger.slotOf(current.symbols[c], current.symbols[c].hashCode()), c + 1);
+            }
+            table = larger;
+            current = larger;
+            slot = current.slotOf(symbol, symbol.hashCode());
+        }
+        current.symbols[code] = symbol;
+        current.slots.set(slot, code + 1);
+        size = code + 1;
+        return code;
+    }
+
+    /**
+     * Spreads the hash bits so that similar strings land in different slots.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compares a symbol with ASCII bytes.
+     */
+    private static boolean matches(String symbol, byte[] buffer, int start, int length) {
+        if (symbol.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != buffer[start + i]) return false;
+        }
+        return true;
+    }
+}
@@ -3,8 +3,9 @@ package Operation;
 import Model.User;
 import Model.Customer;
 import Model.Admin;
+import java.util.List;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 import java.io.File;
 import java.io.IOException;
 import org.json.simple.JSONObject;
@@ -20,16 +21,16 @@ import org.json.simple.parser.ParseException;
 public class UserOperation {
 
     /** Singleton instance of UserOperation. */
-    private static UserOperation instance;
+    private static volatile UserOperation instance;
 
-    /** JSON parser for processing user data stored in JSON format. */
-    private JSONParser parser;
+    /** Bloom filter over the usernames in the users file. */
+    private final KeyFilter usernameFilter;
 
     /**
-     * Private constructor to initialize the JSON parser.
+     * Private constructor to enforce the singleton pattern.
      */
     private UserOperation() {
-        parser = new JSONParser();
+        usernameFilter = RecordFile.USERS.addKeyFilter("user_name");
     }
 
     /**
@@ -39,19 +40,32 @@ public class UserOperation {
      * @return the singleton instance of UserOperation.
      */
     public static UserOperation getInstance() {
-        if (instance == null) { 
-            instance = new UserOperation();
+        if (instance == null) {
+            synchronized (UserOperation.class) {
+                if (instance == null) {
+                    instance = new UserOperation();
+                }
+            }
         }
         return instance;
     }
 
     /**
      * Generates a unique user identifier in the format "u_xxxxxxxxxx".
+     * <p>
+     * The number is taken from the persistent {@link IdAllocator}, so IDs never repeat, even
+     * across restarts or when several users register at once.
+     * </p>
      *
-     * @return a unique user ID string.
+     * @return a unique user ID string, or null if no ID could be allocated.
      */
     public String generateUniqueUserId() {
-        return "u_" + String.format("%010d", new Random().nextInt(1000000000));
+        try {
+            return IdAllocator.USERS.nextId();
+        } catch (IOException e) {
+            System.err.println("Error allocating user ID: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -162,49 +176,55 @@ public class UserOperation {
     /**
      * Checks whether a given username already exists in the users file.
      * <p>
-     * The method reads the file "assignment/data/users.txt", which is expected to contain one JSON-formatted
-     * record per line, and searches for a matching "user_name" field.
+     * A Bloom filter over the usernames answers first; most names that are not taken are ruled
+     * out without touching the disk. A possible match is confirmed in the "user_name" index of
+     * "assignment/data/users.txt", so no record has to be read or parsed.
      * </p>
      *
      * @param userName the username to search for.
      * @return true if the username is found; false otherwise.
      */
     public boolean checkUsernameExist(String userName) {
-        File file = new File("assignment/data/users.txt");
+        File file = RecordFile.USERS.getFile();
         if (!file.exists()) {
             return false;
         }
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) {
-                    continue;
-                }
-                try {
-                    // Parse the JSON record.
-                    JSONObject json = (JSONObject) parser.parse(line);
-                    String storedName = (String) json.get("user_name");
-                    if (userName.equals(storedName)) {
-                        return true;
-                    }
-                } catch (ParseException pe) {
-                    System.err.println("Error parsing JSON: " + pe.getMessage());
-                }
+        try {
+            if (!usernameFilter.mightContain(userName)) {
+                return false;
+            }
+            if (RecordFile.USERS.getIndex("user_name").lookupAll(userName).isEmpty()) {
+                usernameFilter.recordFalsePositive();
+                return false;
             }
+            return true;
         } catch (IOException e) {
             System.err.println("Error checking username existence: " + e.getMessage());
         }
         return false;
     }
 
+    /**
+     * Returns the observed false-positive rate of the username filter: the share of checks for
+     * usernames that are not taken which still had to be confirmed in the index.
+     *
+     * @return the rate, between 0 and 1; 0 before any such check.
+     */
+    public double getUsernameFilterFalsePositiveRate() {
+        return usernameFilter.getFalsePositiveRate();
+    }
+
     /**
      * Attempts to log in a user by validating the provided username and password against
      * records stored in "assignment/data/users.txt".
      * <p>
-     * The method parses each JSON-formatted record, decrypts the stored password,
+     * Only the records with the given username are read, through the "user_name" index. The method
+     * parses each of them, decrypts the stored password,
      * and checks if the decrypted password matches the provided password.
      * If the decryption fails for an admin user (possibly stored using an older encryption format),
      * it falls back to comparing against a default admin password ("admin123").
+     * A customer who logs in is returned fully decoded and gets a session in
+     * {@link CustomerOperation}, which serves the profile until the record changes.
      * </p>
      *
      * @param username the username entered by the user.
@@ -212,15 +232,27 @@ public class UserOperation {
      * @return a {@code User} object (either an {@code Admin} or {@code Customer}) if login is successful; null otherwise.
      */
     public User login(String username, String password) {
-        File usersFile = new File("assignment/data/users.txt");
+        File usersFile = RecordFile.USERS.getFile();
         if (!usersFile.exists()) {
             System.err.println("User file not found!");
             return null;
         }
-        try (Scanner scanner = new Scanner(usersFile)) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-                if (line.isEmpty()) continue;
+        // Taken before the lock: creating it registers its session store with the users file.
+        CustomerOperation customerOperation = CustomerOperation.getInstance();
+        // Hold the read lock so a compaction cannot move the record before its session is opened.
+        Lock lock = RecordFile.USERS.readLock();
+        lock.lock();
+        try {
+            JSONParser parser = new JSONParser();
+            RecordIndex usernames = RecordFile.USERS.getIndex("user_name");
+            List<RecordIndex.Slot> slots = usernames.lookupAll(username);
+            if (slots.isEmpty() && "admin".equalsIgnoreCase(username)) {
+                // The legacy admin fallback below accepts the admin's name in any case.
+                slots = usernames.lookupAll("admin");
+            }
+            List<String> records = RecordFile.USERS.readAll(slots);
+            for (int i = 0; i < records.size(); i++) {
+                String line = records.get(i).trim();
                 try {
                     // Parse the current line into a JSON object.
                     JSONObject json = (JSONObject) parser.parse(line);
@@ -256,13 +288,18 @@ public class UserOperation {
                         if ("admin".equalsIgnoreCase(userRole)) {
                             user = new Admin();
                         } else {
+                            // A customer is decoded in full and kept in a session, so the
+                            // customer menu does not have to read the record again.
+                            Customer customer = customerOperation.openSession(records.get(i), slots.get(i).offset);
+                            if (customer != null) {
+                                return customer;
+                            }
                             user = new Customer();
                         }
                         // Set common user data from the JSON record.
                         user.setUserId((String) json.get("user_id"));
                         user.setUserName(storedUsername);
                         user.setUserRole(userRole);
-                        // Additional fields can be set here if needed.
                         return user;
                     }
                 } catch (ParseException e) {
@@ -272,6 +309,8 @@ public class UserOperation {
             }
         } catch (IOException e) {
             System.err.println("Error reading users file: " + e.getMessage());
+        } finally {
+            lock.unlock();
         }
         return null; // Return null if no valid user is found.
     }
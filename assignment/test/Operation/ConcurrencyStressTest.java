@@ -0,0 +1,231 @@
+package Operation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.simple.parser.ParseException;
+
+import Model.Order;
+import Operation.OrderOperation.OrderListResult;
+import Operation.ProductOperation.ProductListResult;
+
+/**
+ * Drives the operation layer from many threads at once and checks the data files afterwards.
+ * <p>
+ * Worker threads mix {@link OrderOperation#createAnOrder}, {@link OrderOperation#deleteOrder},
+ * order listings, {@link CustomerOperation#registerCustomer} and
+ * {@link ProductOperation#getProductList}, while the compaction threshold is lowered so that
+ * background compactions run throughout and another thread compacts on demand. Each worker tags
+ * its orders with a unique order time and remembers which ones it created and deleted, and every
+ * username is attempted by several workers. Afterwards the live records must be exactly the
+ * surviving orders, every order and user ID must be unique, every username must be registered
+ * exactly once, and the indexes must agree with a scan of each file.
+ * </p>
+ * <p>
+ * Run from the repository root. The test works on a temporary copy of "assignment/data", made
+ * with {@link ScratchData} and deleted afterwards, so the checked-in data files are never changed.
+ * The process exits with status 1 if any check fails.
+ * </p>
+ */
+public class ConcurrencyStressTest {
+
+    /** Number of worker threads. */
+    private static final int THREADS = 16;
+
+    /** Operations each worker performs. */
+    private static final int ROUNDS = 400;
+
+    /** Distinct usernames the workers compete to register. */
+    private static final int USERNAMES = 40;
+
+    /** Number of failed checks. */
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        File data = ScratchData.create();
+        try {
+            run();
+        } finally {
+            ScratchData.delete(data);
+        }
+        if (failures > 0) {
+            System.err.println("ConcurrencyStressTest: " + failures + " failed check(s)");
+            System.exit(1);
+        }
+        System.out.println("ConcurrencyStressTest: OK");
+    }
+
+    /**
+     * Runs the workers and checks the data files they leave.
+     */
+    private static void run() throws Exception {
+        RecordFile.ORDERS.setCompactionThreshold(0.05);
+        Set<String> ordersBefore = liveOrderTimes();
+        Set<String> usersBefore = new HashSet<>();
+        for (String line : RecordFile.USERS.readLines()) {
+            usersBefore.add(RecordCodec.extractField(line, "user_name"));
+        }
+        int productsBefore = ProductOperation.getInstance().getProductList(1).totalPages;
+
+        Map<String, Boolean> created = new ConcurrentHashMap<>();
+        Set<String> deleted = ConcurrentHashMap.newKeySet();
+        AtomicInteger registered = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                Random random = new Random(thread);
+                OrderOperation orders = OrderOperation.getInstance();
+                String customerId = "u_stress" + thread;
+                for (int i = 0; i < ROUNDS; i++) {
+                    String tag = "stress_" + thread + "_" + i;
+                    if (orders.createAnOrder(customerId, "p001", tag)) {
+                        created.put(tag, Boolean.TRUE);
+                    }
+                    if (random.nextInt(3) == 0) {
+                        // Delete one of this worker's own orders, found through the user_id index.
+                        OrderListResult page = orders.getOrderList(customerId, 1);
+                        if (!page.orders.isEmpty()) {
+                            Order victim = page.orders.get(random.nextInt(page.orders.size()));
+                            if (orders.deleteOrder(victim.getOrderId())) {
+                                deleted.add(victim.getOrderTime());
+                            }
+                        }
+                    }
+                    orders.getOrderList("all", 1 + random.nextInt(5));
+                    ProductListResult products = ProductOperation.getInstance().getProductList(1 + random.nextInt(2));
+                    check(products.totalPages == productsBefore, "product pages changed");
+                    String userName = "stress" + letters(random.nextInt(USERNAMES));
+                    if (CustomerOperation.getInstance().registerCustomer(userName, "abc12345",
+                            "stress@example.com", "0412345678")) {
+                        registered.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        Future<?> compactor = pool.submit(() -> {
+            start.await();
+            while (running.get()) {
+                RecordFile.ORDERS.compact();
+                Thread.sleep(5);
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        running.set(false);
+        compactor.get();
+        pool.shutdown();
+
+        // Orders: exactly the ones created and not deleted survive, once each, with unique IDs.
+        Set<String> expected = new HashSet<>(ordersBefore);
+        expected.addAll(created.keySet());
+        expected.removeAll(deleted);
+        List<String> orderLines = RecordFile.ORDERS.readLines();
+        Set<String> orderIds = new HashSet<>();
+        Map<String, Integer> orderTimes = new HashMap<>();
+        for (String line : orderLines) {
+            check(orderIds.add(RecordCodec.extractField(line, "order_id")), "duplicate order ID in " + line);
+            orderTimes.merge(RecordCodec.extractField(line, "order_time"), 1, Integer::sum);
+        }
+        for (String tag : created.keySet()) {
+            int copies = orderTimes.getOrDefault(tag, 0);
+            check(copies == (deleted.contains(tag) ? 0 : 1), "order " + tag + " stored " + copies + " times");
+        }
+        check(orderTimes.keySet().equals(expected), "live orders differ from created minus deleted");
+        checkIndexes(RecordFile.ORDERS, "order_id");
+
+        // Users: each contested username exactly once, every user ID unique.
+        Map<String, Integer> userNames = new HashMap<>();
+        Set<String> userIds = new HashSet<>();
+        for (String line : RecordFile.USERS.readLines()) {
+            check(userIds.add(RecordCodec.extractField(line, "user_id")), "duplicate user ID in " + line);
+            userNames.merge(RecordCodec.extractField(line, "user_name"), 1, Integer::sum);
+        }
+        int newNames = 0;
+        for (int n = 0; n < USERNAMES; n++) {
+            String userName = "stress" + letters(n);
+            Integer copies = userNames.get(userName);
+            if (!usersBefore.contains(userName)) {
+                check(copies != null && copies == 1, "username " + userName + " stored " + copies + " times");
+                newNames++;
+            }
+        }
+        check(registered.get() == newNames, registered.get() + " registrations for " + newNames + " new usernames");
+        checkIndexes(RecordFile.USERS, "user_id");
+
+        System.out.println("Orders: " + created.size() + " created, " + deleted.size() + " deleted, "
+                + orderLines.size() + " live; users: " + registered.get() + " registered");
+    }
+
+    /**
+     * Checks that the primary index finds every live record at the position a scan finds it.
+     */
+    private static void checkIndexes(RecordFile recordFile, String keyField) throws Exception {
+        List<long[]> positions = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        recordFile.scan((offset, length, line) -> {
+            try {
+                keys.add(RecordCodec.extractField(line, keyField));
+            } catch (ParseException e) {
+                keys.add(null);
+            }
+            positions.add(new long[] {offset, length});
+            return true;
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            RecordIndex.Slot slot = recordFile.getPrimaryIndex().lookup(keys.get(i));
+            check(slot != null && slot.offset == positions.get(i)[0] && slot.length == positions.get(i)[1],
+                    recordFile.getFile().getName() + " index disagrees with scan for " + keys.get(i));
+        }
+    }
+
+    private static Set<String> liveOrderTimes() throws Exception {
+        Set<String> times = new HashSet<>();
+        for (String line : RecordFile.ORDERS.readLines()) {
+            times.add(RecordCodec.extractField(line, "order_time"));
+        }
+        return times;
+    }
+
+    /**
+     * Spells a number in letters, since usernames may not hold digits.
+     */
+    private static String letters(int number) {
+        StringBuilder text = new StringBuilder();
+        do {
+            text.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return text.toString();
+    }
+
+    private static synchronized void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            if (failures <= 20) {
+                System.err.println("Check failed: " + message);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package Operation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.json.simple.parser.ParseException;
+
+import Model.Customer;
+
+/**
+ * Kills a process while it replaces the users file and checks what the next process finds.
+ * <p>
+ * Each round starts a child JVM that replaces the users file over and over, through
+ * {@link RecordFile#replace(RecordFile.ContentWriter)} streamed slowly and through
+ * {@link RecordFile#rewrite(List)}, and looks a record up after each one so that the index
+ * sidecars are saved again as well. The new contents are the existing customers plus a block of
+ * generated ones, and are the same every time. The child is killed at a random moment, and the
+ * users file must then hold either exactly the bytes it held before the round or exactly the new
+ * contents. A second child then opens the file, which must remove every temporary file the killed
+ * child left, and checks that both indexes agree with a scan of the file.
+ * </p>
+ * <p>
+ * Run from the repository root. The test works on a temporary copy of "assignment/data", made
+ * with {@link ScratchData} and deleted afterwards, so the checked-in data files are never changed.
+ * The process exits with status 1 if any check fails.
+ * </p>
+ */
+public class CrashRecoveryTest {
+
+    /** Number of times the writer is killed. */
+    private static final int ROUNDS = 12;
+
+    /** Generated customers added to the file, enough that a replace takes a while. */
+    private static final int GENERATED = 20_000;
+
+    /** Generated customers written between pauses of the slow replace. */
+    private static final int RECORDS_PER_PAUSE = 100;
+
+    /** Prefix of the user IDs of generated customers. */
+    private static final String GENERATED_PREFIX = "u_crash";
+
+    /** The files a killed writer may leave half-written, in the data directory. */
+    private static final String[] TEMPORARY_FILES = {
+            "users.txt.tmp", "users.idx.tmp", "users.user_name.idx.tmp"
+    };
+
+    /** Number of failed checks. */
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "write".equals(args[0])) {
+            write(new File(args[1]));
+            return;
+        }
+        if (args.length > 0 && "verify".equals(args[0])) {
+            verify(new File(System.getProperty(RecordFile.DATA_DIRECTORY_PROPERTY)));
+            return;
+        }
+        File data = ScratchData.create();
+        int killedMidWrite;
+        try {
+            killedMidWrite = run(data, new Random(args.length > 0 ? Long.parseLong(args[0]) : 20240101L));
+        } finally {
+            ScratchData.delete(data);
+        }
+        // Without a kill during a write the rounds prove nothing about recovery.
+        check(killedMidWrite > 0, "the writer was never killed part-way through a write");
+
+        System.out.println(ROUNDS + " rounds, " + killedMidWrite + " killed part-way through a write");
+        if (failures > 0) {
+            System.err.println("CrashRecoveryTest: " + failures + " failed check(s)");
+            System.exit(1);
+        }
+        System.out.println("CrashRecoveryTest: OK");
+    }
+
+    /**
+     * Kills the writer {@link #ROUNDS} times and checks the data directory after each kill.
+     *
+     * @return the number of rounds in which the writer left a temporary file behind.
+     */
+    private static int run(File data, Random random) throws Exception {
+        File users = new File(data, "users.txt");
+        File expectedFile = new File(data, "users.expected");
+        int killedMidWrite = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            byte[] before = Files.readAllBytes(users.toPath());
+            Process writer = start("write", expectedFile.getPath());
+            BufferedReader output = new BufferedReader(new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8));
+            if (!"writing".equals(output.readLine())) {
+                check(false, "round " + round + ": the writer did not start");
+                writer.destroyForcibly().waitFor();
+                continue;
+            }
+            Thread.sleep(random.nextInt(400));
+            writer.destroyForcibly().waitFor();
+
+            byte[] after = Files.readAllBytes(users.toPath());
+            byte[] expected = Files.readAllBytes(expectedFile.toPath());
+            check(Arrays.equals(after, before) || Arrays.equals(after, expected),
+                    "round " + round + ": users file is neither the old nor the new contents (" + after.length + " bytes)");
+            for (String temporary : TEMPORARY_FILES) {
+                if (new File(data, temporary).exists()) {
+                    killedMidWrite++;
+                    break;
+                }
+            }
+
+            Process verifier = start("verify");
+            verifier.getInputStream().transferTo(System.out);
+            check(verifier.waitFor() == 0, "round " + round + ": the next open found a damaged state");
+        }
+        return killedMidWrite;
+    }
+
+    /**
+     * Starts a child JVM running this class in the given mode, with the same class path and data directory.
+     */
+    private static Process start(String... arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-D" + RecordFile.DATA_DIRECTORY_PROPERTY + "=" + System.getProperty(RecordFile.DATA_DIRECTORY_PROPERTY));
+        command.add(CrashRecoveryTest.class.getName());
+        command.addAll(Arrays.asList(arguments));
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Child mode: replaces the users file until killed. The new contents are also written to
+     * {@code expectedFile} before the first replace, so the parent knows what a finished one holds.
+     */
+    private static void write(File expectedFile) throws Exception {
+        List<String> records = new ArrayList<>();
+        for (String line : RecordFile.USERS.readLines()) {
+            if (!RecordCodec.extractField(line, "user_id").startsWith(GENERATED_PREFIX)) {
+                records.add(line);
+            }
+        }
+        for (int n = 0; n < GENERATED; n++) {
+            records.add(RecordCodec.encodeCustomer(new Customer(GENERATED_PREFIX + n, "crash" + letters(n),
+                    "aaaaa0b1c2d3e4f5g6h7i8j9k0l1m2n3o4p5q6r7s8t9u0v1w2x3y4z5aaaaa", "01-01-2024_00:00:00",
+                    "customer", "crash@example.com", "0412345678")));
+        }
+        byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = Files.newOutputStream(expectedFile.toPath())) {
+            for (String record : records) {
+                out.write(record.getBytes(StandardCharsets.UTF_8));
+                out.write(separator);
+            }
+        }
+        System.out.println("writing");
+        System.out.flush();
+        for (int pass = 0; ; pass++) {
+            if (pass % 2 == 0) {
+                RecordFile.USERS.replace(out -> {
+                    for (int i = 0; i < records.size(); i++) {
+                        out.write(records.get(i).getBytes(StandardCharsets.UTF_8));
+                        out.write(separator);
+                        if (i % RECORDS_PER_PAUSE == 0) {
+                            out.flush();
+                            pause();
+                        }
+                    }
+                });
+            } else {
+                RecordFile.USERS.rewrite(records);
+            }
+            // Rebuild and save both index sidecars.
+            RecordFile.USERS.getPrimaryIndex().lookup(GENERATED_PREFIX + pass % GENERATED);
+            RecordFile.USERS.getIndex("user_name").lookup("crash" + letters(pass % GENERATED));
+        }
+    }
+
+    /**
+     * Child mode: opens the users file after a crash and checks it. Exits with status 1 on failure.
+     */
+    private static void verify(File data) throws Exception {
+        // Opening the file removes what a crashed writer left behind.
+        List<String> lines = RecordFile.USERS.readLines();
+        for (String temporary : TEMPORARY_FILES) {
+            check(!new File(data, temporary).exists(), temporary + " remains after the file was opened");
+        }
+        List<long[]> positions = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        RecordFile.USERS.scan((offset, length, line) -> {
+            positions.add(new long[] {offset, length});
+            records.add(line);
+            return true;
+        });
+        check(records.equals(lines), "a scan and readLines disagree");
+        for (int i = 0; i < records.size(); i++) {
+            String userId = field(records.get(i), "user_id");
+            String userName = field(records.get(i), "user_name");
+            long offset = positions.get(i)[0];
+            RecordIndex.Slot slot = RecordFile.USERS.getPrimaryIndex().lookup(userId);
+            check(slot != null && slot.offset == offset && slot.length == positions.get(i)[1],
+                    "user_id index disagrees with scan for " + userId);
+            boolean found = false;
+            for (RecordIndex.Slot match : RecordFile.USERS.getIndex("user_name").lookupAll(userName)) {
+                found |= match.offset == offset;
+            }
+            check(found, "user_name index disagrees with scan for " + userName);
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String field(String line, String name) {
+        try {
+            return RecordCodec.extractField(line, name);
+        } catch (ParseException e) {
+            check(false, "unreadable record " + line);
+            return null;
+        }
+    }
+
+    private static void pause() throws IOException {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Spells a number in letters, since usernames may not hold digits.
+     */
+    private static String letters(int number) {
+        StringBuilder text = new StringBuilder();
+        do {
+            text.append((char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return text.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            failures++;
+            if (failures <= 20) {
+                System.err.println("Check failed: " + message);
+            }
+        }
+    }
+}
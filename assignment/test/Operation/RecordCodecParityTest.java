@@ -0,0 +1,219 @@
+package Operation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import Model.Customer;
+import Model.Order;
+import Model.Product;
+
+/**
+ * Checks that {@link RecordCodec} reads and writes exactly what json-simple does.
+ * <p>
+ * The reference side is the path the codec replaced: records parsed with {@link JSONParser},
+ * numbers converted from their text, and records written as a {@link LinkedHashMap} in the
+ * codec's field order through {@link JSONObject#toJSONString(Map)}. The shipped data files, every
+ * character of the Basic Multilingual Plane and a large set of random numbers are compared.
+ * </p>
+ * <p>
+ * Run from the repository root; the process exits with status 1 if any value differs.
+ * </p>
+ */
+public class RecordCodecParityTest {
+
+    /** Random numbers compared in each encoding. */
+    private static final int NUMBER_SAMPLES = 500_000;
+
+    /** Number of differences found. */
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        checkDataFiles();
+        checkEscapes();
+        checkNumbers(new Random(args.length > 0 ? Long.parseLong(args[0]) : 20240101L));
+        if (failures > 0) {
+            System.err.println("RecordCodecParityTest: " + failures + " difference(s)");
+            System.exit(1);
+        }
+        System.out.println("RecordCodecParityTest: OK");
+    }
+
+    /**
+     * Decodes and re-encodes every record of the shipped data files both ways.
+     */
+    private static void checkDataFiles() throws IOException, ParseException {
+        JSONParser parser = new JSONParser();
+        for (String line : readLines("assignment/data/products.txt")) {
+            JSONObject json = (JSONObject) parser.parse(line);
+            Product expected = new Product((String) json.get("pro_id"), (String) json.get("pro_model"),
+                    (String) json.get("pro_category"), (String) json.get("pro_name"),
+                    Double.parseDouble(json.get("pro_current_price").toString()),
+                    Double.parseDouble(json.get("pro_raw_price").toString()),
+                    Double.parseDouble(json.get("pro_discount").toString()),
+                    Integer.parseInt(json.get("pro_likes_count").toString()));
+            Product actual = RecordCodec.decodeProduct(line);
+            check(Objects.equals(productFields(expected), productFields(actual)), "product decode", line);
+            check(productJson(expected).equals(RecordCodec.encodeProduct(actual)), "product encode", line);
+        }
+        for (String line : readLines("assignment/data/orders.txt")) {
+            JSONObject json = (JSONObject) parser.parse(line);
+            Order expected = new Order((String) json.get("order_id"), (String) json.get("user_id"),
+                    (String) json.get("pro_id"), (String) json.get("order_time"));
+            Order actual = RecordCodec.decodeOrder(line);
+            check(Objects.equals(orderFields(expected), orderFields(actual)), "order decode", line);
+            check(orderJson(expected).equals(RecordCodec.encodeOrder(actual)), "order encode", line);
+        }
+        for (String line : readLines("assignment/data/users.txt")) {
+            JSONObject json = (JSONObject) parser.parse(line);
+            Customer expected = new Customer((String) json.get("user_id"), (String) json.get("user_name"),
+                    (String) json.get("user_password"), (String) json.get("user_register_time"),
+                    (String) json.get("user_role"), (String) json.get("user_email"),
+                    (String) json.get("user_mobile"));
+            Customer actual = RecordCodec.decodeCustomer(line);
+            check(Objects.equals(customerFields(expected), customerFields(actual)), "user decode", line);
+            // Only customer records are written by the codec; admin records have no email or mobile.
+            if ("customer".equals(expected.getUserRole())) {
+                check(customerJson(expected).equals(RecordCodec.encodeCustomer(actual)), "user encode", line);
+            }
+        }
+    }
+
+    /**
+     * Writes and reads back every character of the Basic Multilingual Plane.
+     */
+    private static void checkEscapes() throws ParseException {
+        JSONParser parser = new JSONParser();
+        for (int c = 0; c <= 0xFFFF; c++) {
+            String name = "a" + (char) c + "b";
+            Product product = new Product("p001", "m", "c", name, 1.5, 2.0, 25.0, 3);
+            String encoded = RecordCodec.encodeProduct(product);
+            String label = "char U+" + String.format("%04X", c);
+            check(productJson(product).equals(encoded), label + " encode", encoded);
+            check(name.equals(((JSONObject) parser.parse(encoded)).get("pro_name")), label + " json-simple read", encoded);
+            // A lone surrogate cannot survive UTF-8, which is how records are stored.
+            if (!Character.isSurrogate((char) c)) {
+                check(name.equals(RecordCodec.decodeProduct(encoded).getProName()), label + " decode", encoded);
+            }
+        }
+    }
+
+    /**
+     * Writes and reads back random numbers of the shapes prices take, and arbitrary doubles.
+     */
+    private static void checkNumbers(Random random) throws ParseException {
+        JSONParser parser = new JSONParser();
+        for (int i = 0; i < NUMBER_SAMPLES; i++) {
+            double value;
+            switch (i % 4) {
+                case 0: value = random.nextInt(10_000_000) / 100.0; break;
+                case 1: value = random.nextDouble() * Math.pow(10, random.nextInt(12)); break;
+                case 2: value = -random.nextInt(100_000) / 1000.0; break;
+                default:
+                    do {
+                        value = Double.longBitsToDouble(random.nextLong());
+                    } while (Double.isNaN(value) || Double.isInfinite(value));
+            }
+            Product product = new Product("p001", "m", "c", "n", value, value, value, random.nextInt());
+            String encoded = RecordCodec.encodeProduct(product);
+            check(productJson(product).equals(encoded), "number encode " + value, encoded);
+
+            JSONObject json = (JSONObject) parser.parse(encoded);
+            double expected = Double.parseDouble(json.get("pro_current_price").toString());
+            check(Double.compare(expected, RecordCodec.decodeProduct(encoded).getProCurrentPrice()) == 0,
+                    "number decode " + value, encoded);
+
+            // Hand-written records may hold plain integers or short decimals.
+            String text = random.nextBoolean()
+                    ? Long.toString(random.nextLong() % 1_000_000_000_000L)
+                    : random.nextInt(1000) + "." + random.nextInt(1000);
+            String line = "{\"pro_id\":\"p001\",\"pro_current_price\":" + text + ",\"pro_raw_price\":" + text
+                    + ",\"pro_discount\":" + text + ",\"pro_likes_count\":0}";
+            check(Double.compare(Double.parseDouble(text), RecordCodec.decodeProduct(line).getProCurrentPrice()) == 0,
+                    "number text " + text, line);
+        }
+    }
+
+    // ------------------------------------------------------------------ reference encoding
+
+    private static String productJson(Product product) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("pro_id", product.getProId());
+        map.put("pro_model", product.getProModel());
+        map.put("pro_category", product.getProCategory());
+        map.put("pro_name", product.getProName());
+        map.put("pro_current_price", product.getProCurrentPrice());
+        map.put("pro_raw_price", product.getProRawPrice());
+        map.put("pro_discount", product.getProDiscount());
+        map.put("pro_likes_count", product.getProLikesCount());
+        return JSONObject.toJSONString(map);
+    }
+
+    private static String orderJson(Order order) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("order_id", order.getOrderId());
+        map.put("user_id", order.getUserId());
+        map.put("pro_id", order.getProId());
+        map.put("order_time", order.getOrderTime());
+        return JSONObject.toJSONString(map);
+    }
+
+    private static String customerJson(Customer customer) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("user_id", customer.getUserId());
+        map.put("user_name", customer.getUserName());
+        map.put("user_password", customer.getUserPassword());
+        map.put("user_register_time", customer.getUserRegisterTime());
+        map.put("user_role", customer.getUserRole());
+        map.put("user_email", customer.getUserEmail());
+        map.put("user_mobile", customer.getUserMobile());
+        return JSONObject.toJSONString(map);
+    }
+
+    // ------------------------------------------------------------------ helpers
+
+    private static List<Object> productFields(Product p) {
+        return List.of(String.valueOf(p.getProId()), String.valueOf(p.getProModel()), String.valueOf(p.getProCategory()),
+                String.valueOf(p.getProName()), p.getProCurrentPrice(), p.getProRawPrice(), p.getProDiscount(),
+                p.getProLikesCount());
+    }
+
+    private static List<String> orderFields(Order o) {
+        return Arrays.asList(o.getOrderId(), o.getUserId(), o.getProId(), o.getOrderTime());
+    }
+
+    private static List<String> customerFields(Customer c) {
+        return Arrays.asList(c.getUserId(), c.getUserName(), c.getUserPassword(), c.getUserRegisterTime(),
+                c.getUserRole(), c.getUserEmail(), c.getUserMobile());
+    }
+
+    private static List<String> readLines(String path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty() && !RecordCodec.isTombstone(line)) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+
+    private static void check(boolean condition, String what, String record) {
+        if (!condition) {
+            failures++;
+            if (failures <= 20) {
+                System.err.println("Mismatch in " + what + ": " + record);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Gives a test its own copy of the data files, so that it never changes "assignment/data".
+ * <p>
+ * {@link #create()} copies the files of "assignment/data" to a new temporary directory and sets
+ * the {@value RecordFile#DATA_DIRECTORY_PROPERTY} system property to it. It must be called before
+ * the test first uses {@link RecordFile} or any operation class, since the data directory is read
+ * once when {@link RecordFile} is loaded.
+ * </p>
+ */
+final class ScratchData {
+
+    /** The checked-in data files. */
+    private static final File SOURCE = new File("assignment/data");
+
+    private ScratchData() {
+    }
+
+    /**
+     * Copies the data files to a temporary directory and makes it the data directory.
+     *
+     * @return the temporary directory.
+     * @throws IOException if the data files cannot be found or copied.
+     */
+    static File create() throws IOException {
+        File[] files = SOURCE.listFiles();
+        if (files == null) {
+            throw new IOException("Data directory not found: " + SOURCE.getAbsolutePath());
+        }
+        File directory = Files.createTempDirectory("assignment-data").toFile();
+        for (File file : files) {
+            if (file.isFile()) {
+                Files.copy(file.toPath(), new File(directory, file.getName()).toPath());
+            }
+        }
+        System.setProperty(RecordFile.DATA_DIRECTORY_PROPERTY, directory.getPath());
+        return directory;
+    }
+
+    /**
+     * Deletes a directory made by {@link #create()} and everything in it.
+     *
+     * @param directory the directory to delete.
+     */
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    delete(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+}